@@ -30,6 +30,23 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+    testOptions {
+        unitTests {
+            // Handlers log through android.util.Log, which is a stub on the JVM
+            isReturnDefaultValues = true
+            all {
+                // The 100k-row XSSF scale run needs a large heap; it only runs with -PlargeScaleTests
+                if (project.hasProperty("largeScaleTests")) {
+                    it.maxHeapSize = "6g"
+                } else {
+                    it.maxHeapSize = "1g"
+                    it.useJUnit {
+                        excludeCategories("com.example.markscalculator.utils.LargeScaleTest")
+                    }
+                }
+            }
+        }
+    }
 }
 
 dependencies {
@@ -38,6 +55,7 @@ dependencies {
     implementation(libs.material)
     implementation(libs.activity)
     implementation(libs.constraintlayout)
+    implementation(libs.work.runtime)
     implementation("org.apache.poi:poi:5.3.0")
     implementation("org.apache.poi:poi-ooxml:5.3.0")
     implementation("com.google.android.material:material:1.12.0")
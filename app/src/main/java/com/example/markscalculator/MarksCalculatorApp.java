@@ -0,0 +1,36 @@
+package com.example.markscalculator;
+
+import android.app.Application;
+
+import com.example.markscalculator.utils.AppExecutors;
+import com.example.markscalculator.utils.DocumentSessionManager;
+import com.example.markscalculator.utils.StartupTimings;
+
+public class MarksCalculatorApp extends Application {
+    private AppExecutors executors;
+    private DocumentSessionManager sessionManager;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        executors = new AppExecutors();
+        sessionManager = new DocumentSessionManager(this, executors);
+        StartupTimings.mark("Application created");
+    }
+
+    public AppExecutors getExecutors() {
+        return executors;
+    }
+
+    public DocumentSessionManager getSessionManager() {
+        return sessionManager;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            sessionManager.trimToActive();
+        }
+    }
+}
@@ -1,34 +1,77 @@
 package com.example.markscalculator.activities;
 
 import android.Manifest;
+import android.content.ClipData;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
 import android.provider.Settings;
+import android.util.Log;
+import android.view.View;
 import android.widget.Button;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
 
+import com.example.markscalculator.MarksCalculatorApp;
 import com.example.markscalculator.R;
+import com.example.markscalculator.utils.AppExecutors;
+import com.example.markscalculator.utils.DocumentSessionManager;
+import com.example.markscalculator.utils.DocumentStreams;
+import com.example.markscalculator.utils.PoiWarmUp;
+import com.example.markscalculator.utils.StartupTimings;
+import com.example.markscalculator.utils.WorkbookMerger;
+import com.example.markscalculator.workers.BulkImportWorker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class MainActivity extends AppCompatActivity {
+    private static final String TAG = "MainActivity";
     private Button selectFileButton;
+    private Button mergeButton;
+    private View progressIndicator;
     private static final int PICK_EXCEL_FILE = 1;
     private static final int PERMISSION_REQUEST_CODE = 2;
+    private static final int NOTIFICATION_REQUEST_CODE = 3;
+    private static final int PICK_MERGE_FILES = 4;
+    private static final int CREATE_MERGED_FILE = 5;
+    private static final String XLSX_MIME_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+    private List<Uri> pendingMergeFiles;
+    private WorkbookMerger.ConflictPolicy pendingMergePolicy;
+    // Files above this size are imported by BulkImportWorker before the editor opens
+    private static final long BACKGROUND_IMPORT_THRESHOLD_BYTES = 1024 * 1024;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // Start before inflating so POI is loading while the user picks a file
+        PoiWarmUp.start();
         setContentView(R.layout.activity_main);
 
         selectFileButton = findViewById(R.id.selectFileButton);
+        progressIndicator = findViewById(R.id.progressIndicator);
+        mergeButton = findViewById(R.id.mergeButton);
         selectFileButton.setOnClickListener(v -> checkPermissionsAndSelectFile());
+        mergeButton.setOnClickListener(v -> selectFilesToMerge());
+        StartupTimings.mark("MainActivity created");
     }
 
     private void checkPermissionsAndSelectFile() {
@@ -97,6 +140,7 @@ public class MainActivity extends AppCompatActivity {
         Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
         intent.addCategory(Intent.CATEGORY_OPENABLE);
         intent.setType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
         startActivityForResult(intent, PICK_EXCEL_FILE);
     }
 
@@ -120,19 +164,43 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
-        if (requestCode == PICK_EXCEL_FILE && resultCode == RESULT_OK) {
-            Uri selectedFile = data.getData();
-            if (selectedFile != null) {
+        if (requestCode == PICK_EXCEL_FILE && resultCode == RESULT_OK && data != null) {
+            List<Uri> selectedFiles = getSelectedFiles(data);
+            if (!selectedFiles.isEmpty()) {
                 // Take persistable URI permission
                 final int takeFlags = Intent.FLAG_GRANT_READ_URI_PERMISSION |
                         Intent.FLAG_GRANT_WRITE_URI_PERMISSION;
-                getContentResolver().takePersistableUriPermission(selectedFile, takeFlags);
+                for (Uri selectedFile : selectedFiles) {
+                    getContentResolver().takePersistableUriPermission(selectedFile, takeFlags);
+                }
 
-                // Start MarksEditorActivity with the selected file
-                Intent intent = new Intent(this, MarksEditorActivity.class);
-                intent.setData(selectedFile);
-                startActivity(intent);
+                Uri firstFile = selectedFiles.get(0);
+                DocumentSessionManager sessionManager =
+                        ((MarksCalculatorApp) getApplication()).getSessionManager();
+                // An open document is already parsed, so importing it again would be wasted work
+                if (selectedFiles.size() == 1 && !sessionManager.isOpen(firstFile) &&
+                        getFileSize(firstFile) >= BACKGROUND_IMPORT_THRESHOLD_BYTES) {
+                    startBackgroundImport(firstFile);
+                } else {
+                    // Load every selected document in parallel; the editor switches between them
+                    sessionManager.preload(selectedFiles);
+                    openEditor(firstFile);
+                }
+            }
+        } else if (requestCode == PICK_MERGE_FILES && resultCode == RESULT_OK && data != null) {
+            List<Uri> mergeFiles = getSelectedFiles(data);
+            if (mergeFiles.size() < 2) {
+                Toast.makeText(this, "Select at least two copies to merge", Toast.LENGTH_SHORT).show();
+            } else {
+                showMergePolicyDialog(mergeFiles);
             }
+        } else if (requestCode == CREATE_MERGED_FILE && resultCode == RESULT_OK && data != null
+                && data.getData() != null && pendingMergeFiles != null) {
+            Uri output = data.getData();
+            getContentResolver().takePersistableUriPermission(output,
+                    Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+            runMerge(pendingMergeFiles, pendingMergePolicy, output);
+            pendingMergeFiles = null;
         } else if (requestCode == PERMISSION_REQUEST_CODE) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
                 if (Environment.isExternalStorageManager()) {
@@ -143,4 +211,159 @@ public class MainActivity extends AppCompatActivity {
             }
         }
     }
+
+    private void selectFilesToMerge() {
+        Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{XLSX_MIME_TYPE, "text/csv", "text/comma-separated-values"});
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+        startActivityForResult(intent, PICK_MERGE_FILES);
+    }
+
+    private void showMergePolicyDialog(List<Uri> mergeFiles) {
+        WorkbookMerger.ConflictPolicy[] policies = WorkbookMerger.ConflictPolicy.values();
+        CharSequence[] labels = {"Latest copy wins", "Non-zero mark wins", "Highest mark wins"};
+        new AlertDialog.Builder(this)
+                .setTitle("When copies disagree")
+                .setItems(labels, (dialogInterface, which) -> {
+                    pendingMergeFiles = mergeFiles;
+                    pendingMergePolicy = policies[which];
+                    Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+                    intent.addCategory(Intent.CATEGORY_OPENABLE);
+                    intent.setType(XLSX_MIME_TYPE);
+                    intent.putExtra(Intent.EXTRA_TITLE, "merged.xlsx");
+                    startActivityForResult(intent, CREATE_MERGED_FILE);
+                })
+                .show();
+    }
+
+    private void runMerge(List<Uri> mergeFiles, WorkbookMerger.ConflictPolicy policy, Uri output) {
+        AppExecutors executors = ((MarksCalculatorApp) getApplication()).getExecutors();
+        progressIndicator.setVisibility(View.VISIBLE);
+        mergeButton.setEnabled(false);
+
+        // Coordinate on the compute lane; the merger reads the sources on the I/O lane
+        executors.compute().execute(() -> {
+            String message;
+            boolean merged = false;
+            try {
+                // One provider query per copy, not one per comparison
+                Map<Uri, Long> lastModified = new HashMap<>();
+                for (Uri uri : mergeFiles) {
+                    lastModified.put(uri, getLastModified(uri));
+                }
+                List<Uri> ordered = new ArrayList<>(mergeFiles);
+                Collections.sort(ordered, Comparator.comparingLong(lastModified::get));
+                List<WorkbookMerger.MergeSource> sources = new ArrayList<>();
+                for (Uri uri : ordered) {
+                    String type = getContentResolver().getType(uri);
+                    boolean csv = type != null && (type.equals("text/csv") || type.equals("text/comma-separated-values"));
+                    sources.add(new WorkbookMerger.MergeSource(uri.getLastPathSegment(),
+                            DocumentStreams.forUri(this, uri, "rw"), csv));
+                }
+                WorkbookMerger.MergeResult result = new WorkbookMerger(executors.io(), policy)
+                        .merge(sources, DocumentStreams.forUri(this, output, "wt"));
+                message = "Merged " + result.getStudents() + " students (" +
+                        result.getConflicts() + " conflicting marks resolved)";
+                merged = true;
+            } catch (Exception e) {
+                message = "Merge failed: " + e.getMessage();
+            }
+
+            String finalMessage = message;
+            boolean openResult = merged;
+            executors.mainThread().execute(() -> {
+                progressIndicator.setVisibility(View.GONE);
+                mergeButton.setEnabled(true);
+                Toast.makeText(this, finalMessage, Toast.LENGTH_LONG).show();
+                if (openResult) {
+                    openEditor(output);
+                }
+            });
+        });
+    }
+
+    private long getLastModified(Uri fileUri) {
+        try (Cursor cursor = getContentResolver().query(fileUri,
+                new String[]{DocumentsContract.Document.COLUMN_LAST_MODIFIED}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Error reading last modified time: " + e.getMessage());
+        }
+        // Copies without a timestamp sort first, in picker order, so any dated copy wins conflicts
+        Log.w(TAG, "No last modified time for " + fileUri + ", merging it as the oldest copy");
+        return 0;
+    }
+
+    private List<Uri> getSelectedFiles(Intent data) {
+        List<Uri> selectedFiles = new ArrayList<>();
+        ClipData clipData = data.getClipData();
+        if (clipData != null) {
+            for (int i = 0; i < clipData.getItemCount(); i++) {
+                selectedFiles.add(clipData.getItemAt(i).getUri());
+            }
+        } else if (data.getData() != null) {
+            selectedFiles.add(data.getData());
+        }
+        return selectedFiles;
+    }
+
+    private void openEditor(Uri fileUri) {
+        Intent intent = new Intent(this, MarksEditorActivity.class);
+        intent.setData(fileUri);
+        startActivity(intent);
+    }
+
+    private void startBackgroundImport(Uri fileUri) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU &&
+                ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
+                        != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this,
+                    new String[]{Manifest.permission.POST_NOTIFICATIONS},
+                    NOTIFICATION_REQUEST_CODE);
+        }
+
+        BulkImportWorker.enqueue(this, fileUri);
+        progressIndicator.setVisibility(View.VISIBLE);
+        selectFileButton.setEnabled(false);
+
+        LiveData<List<WorkInfo>> importState = WorkManager.getInstance(this)
+                .getWorkInfosForUniqueWorkLiveData(BulkImportWorker.uniqueWorkName(fileUri));
+        importState.observe(this, new Observer<List<WorkInfo>>() {
+            @Override
+            public void onChanged(List<WorkInfo> workInfos) {
+                if (workInfos == null || workInfos.isEmpty()) {
+                    return;
+                }
+                WorkInfo.State state = workInfos.get(0).getState();
+                if (!state.isFinished()) {
+                    return;
+                }
+                importState.removeObserver(this);
+                progressIndicator.setVisibility(View.GONE);
+                selectFileButton.setEnabled(true);
+                if (state == WorkInfo.State.SUCCEEDED) {
+                    // The session load reads the rows from the import instead of the file
+                    openEditor(fileUri);
+                } else {
+                    Toast.makeText(MainActivity.this, "Import failed", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+
+    private long getFileSize(Uri fileUri) {
+        try (Cursor cursor = getContentResolver().query(fileUri,
+                new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (Exception e) {
+            // Unknown size, fall back to opening the file directly
+        }
+        return -1;
+    }
 }
\ No newline at end of file
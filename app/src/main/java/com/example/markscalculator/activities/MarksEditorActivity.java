@@ -15,15 +15,23 @@ import android.widget.TextView;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.markscalculator.MarksCalculatorApp;
 import com.example.markscalculator.R;
 import com.example.markscalculator.models.StudentData;
+import com.example.markscalculator.utils.AppExecutors;
+import com.example.markscalculator.utils.DocumentSession;
+import com.example.markscalculator.utils.DocumentSessionManager;
 import com.example.markscalculator.utils.ExcelHandler;
+import com.example.markscalculator.utils.MarksRecalculator;
+import com.example.markscalculator.utils.MarksScheme;
 import com.google.android.material.snackbar.Snackbar;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.List;
 
 public class MarksEditorActivity extends AppCompatActivity {
+    private static final long RECALCULATE_DELAY_MS = 150;
+    private static final int TOP_STUDENT_COUNT = 10;
+
     private TextView nameTextView;
     private TextView usnTextView;
     private EditText exam1EditText;
@@ -33,22 +41,42 @@ public class MarksEditorActivity extends AppCompatActivity {
     private TextView totalTextView;
     private TextView averageTextView;
     private TextView finalMarksTextView;
-    private Button calculateButton;
+    private TextView rankTextView;
     private Button previousButton;
     private Button submitButton;
+    private Button switchDocumentButton;
+    private Button undoButton;
+    private Button redoButton;
     private ProgressBar progressBar;
 
-    private ExcelHandler excelHandler;
+    private AppExecutors executors;
+    private DocumentSessionManager sessionManager;
+    private DocumentSession session;
     private int currentRow = 1;
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private boolean hasUnsavedChanges = false;
+    // Marks typed since the student was shown; undo and redo would overwrite them
+    private boolean hasTypedInput = false;
+    private boolean canUndo = false;
+    private boolean canRedo = false;
+    private boolean bindingStudent = false;
+    private MarksRecalculator recalculator;
+    private final Runnable recalculate = () -> recalculator.submit(
+            exam1EditText.getText().toString(),
+            exam2EditText.getText().toString(),
+            exam3EditText.getText().toString(),
+            aatEditText.getText().toString());
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_marks_editor);
 
+        MarksCalculatorApp app = (MarksCalculatorApp) getApplication();
+        executors = app.getExecutors();
+        sessionManager = app.getSessionManager();
+        recalculator = new MarksRecalculator(executors.compute(), mainHandler::post, this::onMarksRecalculated);
+
         initializeViews();
         setupExcelHandler();
         setupListeners();
@@ -64,9 +92,12 @@ public class MarksEditorActivity extends AppCompatActivity {
         totalTextView = findViewById(R.id.totalTextView);
         averageTextView = findViewById(R.id.averageTextView);
         finalMarksTextView = findViewById(R.id.finalMarksTextView);
-        calculateButton = findViewById(R.id.calculateButton);
+        rankTextView = findViewById(R.id.rankTextView);
         previousButton = findViewById(R.id.previousButton);
         submitButton = findViewById(R.id.submitButton);
+        switchDocumentButton = findViewById(R.id.switchDocumentButton);
+        undoButton = findViewById(R.id.undoButton);
+        redoButton = findViewById(R.id.redoButton);
         progressBar = findViewById(R.id.progressBar);
     }
 
@@ -78,14 +109,64 @@ public class MarksEditorActivity extends AppCompatActivity {
             return;
         }
 
-        executor.execute(() -> {
-            try {
-                excelHandler = new ExcelHandler(this, fileUri);
-                mainHandler.post(this::loadCurrentStudent);
-            } catch (Exception e) {
-                mainHandler.post(() -> showError("Error loading Excel file: " + e.getMessage()));
+        openDocument(fileUri);
+    }
+
+    private void openDocument(Uri fileUri) {
+        if (session != null) {
+            session.setCurrentRow(currentRow);
+            sessionManager.release(session);
+        }
+        session = sessionManager.acquire(fileUri);
+        currentRow = session.getCurrentRow();
+        canUndo = false;
+        canRedo = false;
+        setTitle(session.getDisplayName());
+        updateSwitchDocumentButton();
+
+        // Queued behind the workbook load if the document is not resident yet
+        DocumentSession opening = session;
+        showLoading(true);
+        opening.execute(() -> mainHandler.post(() -> {
+            if (session != opening) {
+                return;
             }
-        });
+            showLoading(false);
+            if (opening.isLoaded()) {
+                loadCurrentStudent();
+            } else {
+                Exception error = opening.getLoadError();
+                showError("Error loading Excel file: " +
+                        (error != null ? error.getMessage() : "document was closed"));
+            }
+        }));
+    }
+
+    private void updateSwitchDocumentButton() {
+        switchDocumentButton.setVisibility(
+                sessionManager.getOpenSessions().size() > 1 ? View.VISIBLE : View.GONE);
+    }
+
+    private void showSwitchDocumentDialog() {
+        List<DocumentSession> openSessions = sessionManager.getOpenSessions();
+        CharSequence[] names = new CharSequence[openSessions.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = openSessions.get(i).getDisplayName();
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Switch Document")
+                .setItems(names, (dialogInterface, which) -> {
+                    Uri target = openSessions.get(which).getUri();
+                    if (target.equals(session.getUri())) {
+                        return;
+                    }
+                    if (hasUnsavedChanges) {
+                        showSaveChangesDialog(() -> openDocument(target));
+                    } else {
+                        openDocument(target);
+                    }
+                })
+                .show();
     }
 
     private void setupListeners() {
@@ -100,8 +181,14 @@ public class MarksEditorActivity extends AppCompatActivity {
 
             @Override
             public void afterTextChanged(Editable s) {
+                if (bindingStudent) {
+                    return;
+                }
                 hasUnsavedChanges = true;
-                calculateButton.setEnabled(true);
+                hasTypedInput = true;
+                // Coalesce keystrokes; only the last edit in a burst is recalculated
+                mainHandler.removeCallbacks(recalculate);
+                mainHandler.postDelayed(recalculate, RECALCULATE_DELAY_MS);
             }
         };
 
@@ -110,17 +197,58 @@ public class MarksEditorActivity extends AppCompatActivity {
         exam3EditText.addTextChangedListener(markChangeWatcher);
         aatEditText.addTextChangedListener(markChangeWatcher);
 
-        calculateButton.setOnClickListener(v -> calculateMarks());
         previousButton.setOnClickListener(v -> navigateToStudent(currentRow - 1));
         submitButton.setOnClickListener(v -> saveChangesAndContinue());
+        switchDocumentButton.setOnClickListener(v -> showSwitchDocumentDialog());
+        undoButton.setOnClickListener(v -> applyHistory(true));
+        redoButton.setOnClickListener(v -> applyHistory(false));
+        rankTextView.setOnClickListener(v -> showTopStudents());
+    }
+
+    // Undo and redo change the in-memory workbook; Submit writes the result to the file
+    private void applyHistory(boolean undo) {
+        if (hasTypedInput) {
+            showDiscardInputDialog(() -> applyHistory(undo));
+            return;
+        }
+        DocumentSession editing = session;
+        editing.execute(() -> {
+            ExcelHandler excelHandler = editing.getExcelHandler();
+            if (excelHandler == null) {
+                return;
+            }
+            int row = undo ? excelHandler.undo() : excelHandler.redo();
+            StudentData student = row > 0 ? excelHandler.getStudentData(row) : null;
+            mainHandler.post(() -> {
+                if (session != editing) {
+                    return;
+                }
+                if (row < 0) {
+                    showError(undo ? "Nothing to undo" : "Nothing to redo");
+                    return;
+                }
+                currentRow = row;
+                if (student != null) {
+                    displayStudentData(student);
+                }
+                updateNavigationButtons();
+                hasUnsavedChanges = true;
+            });
+        });
     }
 
     private void loadCurrentStudent() {
+        DocumentSession reading = session;
+        int row = currentRow;
         showLoading(true);
-        executor.execute(() -> {
+        reading.execute(() -> {
             try {
-                StudentData student = excelHandler.getStudentData(currentRow);
+                StudentData student = reading.getExcelHandler().getStudentData(row);
                 mainHandler.post(() -> {
+                    if (session != reading || currentRow != row) {
+                        showLoading(false);
+                        return;
+                    }
                     if (student != null) {
                         displayStudentData(student);
                         updateNavigationButtons();
@@ -139,47 +267,88 @@ public class MarksEditorActivity extends AppCompatActivity {
     }
 
     private void displayStudentData(StudentData student) {
+        mainHandler.removeCallbacks(recalculate);
+        recalculator.cancel();
+
         nameTextView.setText(getString(R.string.name_format, student.getName()));
         usnTextView.setText(getString(R.string.usn_format, student.getUsn()));
+        bindingStudent = true;
         exam1EditText.setText(String.valueOf(student.getExam1()));
         exam2EditText.setText(String.valueOf(student.getExam2()));
         exam3EditText.setText(String.valueOf(student.getExam3()));
         aatEditText.setText(String.valueOf(student.getAat()));
-        updateCalculations(student.getTotal(), student.getAverage(), student.getAat());
+        bindingStudent = false;
+        hasTypedInput = false;
+
+        double total = MarksScheme.total(student.getExam1(), student.getExam2(), student.getExam3());
+        double average = MarksScheme.average(total);
+        updateCalculations(total, average, MarksScheme.finalMarks(average, student.getAat()));
+        loadRank();
     }
 
-    private void calculateMarks() {
-        try {
-            double exam1 = parseMarkInput(exam1EditText);
-            double exam2 = parseMarkInput(exam2EditText);
-            double exam3 = parseMarkInput(exam3EditText);
-            double aat = parseMarkInput(aatEditText);
-
-            double total = exam1 + exam2 + exam3;
-            double average = total / 5;
-            
-            updateCalculations(total, average, aat);
-            hasUnsavedChanges = true;
-        } catch (NumberFormatException e) {
-            showError("Please enter valid marks");
-        }
+    private void loadRank() {
+        DocumentSession ranking = session;
+        int row = currentRow;
+        rankTextView.setText("");
+        ranking.execute(() -> {
+            ExcelHandler excelHandler = ranking.getExcelHandler();
+            if (excelHandler == null) {
+                return;
+            }
+            int rank = excelHandler.getRank(row);
+            int classSize = excelHandler.getRankedCount();
+            double percentile = excelHandler.getPercentile(row);
+            mainHandler.post(() -> {
+                if (session == ranking && currentRow == row && rank > 0) {
+                    rankTextView.setText(getString(R.string.rank_format, rank, classSize, percentile));
+                }
+            });
+        });
     }
 
-    private double parseMarkInput(EditText editText) throws NumberFormatException {
-        String input = editText.getText().toString().trim();
-        if (input.isEmpty())
-            return 0.0;
-        double value = Double.parseDouble(input);
-        if (value < 0 || value > 50) {
-            throw new NumberFormatException("Marks must be between 0 and 50");
+    private void showTopStudents() {
+        DocumentSession ranking = session;
+        ranking.execute(() -> {
+            ExcelHandler excelHandler = ranking.getExcelHandler();
+            if (excelHandler == null) {
+                return;
+            }
+            List<StudentData> top = excelHandler.getTopStudents(TOP_STUDENT_COUNT);
+            mainHandler.post(() -> {
+                if (session != ranking || isFinishing() || top.isEmpty()) {
+                    return;
+                }
+                CharSequence[] lines = new CharSequence[top.size()];
+                for (int i = 0; i < lines.length; i++) {
+                    StudentData student = top.get(i);
+                    lines[i] = getString(R.string.top_student_format, i + 1, student.getName(), student.getUsn(),
+                            MarksScheme.finalMarks(student.getExam1(), student.getExam2(),
+                                    student.getExam3(), student.getAat()));
+                }
+                AlertDialog dialog = new AlertDialog.Builder(this)
+                        .setTitle("Top of the Class")
+                        .setItems(lines, null)
+                        .setPositiveButton("OK", null)
+                        .show();
+                dialog.getButton(AlertDialog.BUTTON_POSITIVE).setTextColor(getResources().getColor(R.color.textColor));
+            });
+        });
+    }
+
+    private void onMarksRecalculated(MarksRecalculator.Result result) {
+        if (isDestroyed()) {
+            return;
+        }
+        if (result.isValid()) {
+            updateCalculations(result.getTotal(), result.getAverage(), result.getFinalMarks());
+        } else {
+            showError(result.getError());
         }
-        return value;
     }
 
-    private void updateCalculations(double total, double average, double aat) {
+    private void updateCalculations(double total, double average, double finalMarks) {
         totalTextView.setText(getString(R.string.total_format, total));
         averageTextView.setText(getString(R.string.average_format, average));
-        double finalMarks = average + aat;
         finalMarksTextView.setText(getString(R.string.final_marks_format, finalMarks));
     }
 
@@ -196,26 +365,88 @@ public class MarksEditorActivity extends AppCompatActivity {
     }
 
     private void updateNavigationButtons() {
-        previousButton.setEnabled(excelHandler.hasPreviousStudent(currentRow));
-        submitButton.setEnabled(excelHandler.hasNextStudent(currentRow));
+        previousButton.setEnabled(hasPreviousStudent());
+        submitButton.setEnabled(hasNextStudent());
+        refreshHistoryButtons();
+    }
+
+    // The history belongs to the handler, so it is read on the session queue
+    private void refreshHistoryButtons() {
+        DocumentSession checking = session;
+        checking.execute(() -> {
+            ExcelHandler excelHandler = checking.getExcelHandler();
+            boolean undoable = excelHandler != null && excelHandler.canUndo();
+            boolean redoable = excelHandler != null && excelHandler.canRedo();
+            mainHandler.post(() -> {
+                if (session != checking) {
+                    return;
+                }
+                canUndo = undoable;
+                canRedo = redoable;
+                updateHistoryButtons();
+            });
+        });
+    }
+
+    private void updateHistoryButtons() {
+        boolean idle = progressBar.getVisibility() != View.VISIBLE;
+        undoButton.setEnabled(idle && canUndo);
+        redoButton.setEnabled(idle && canRedo);
+    }
+
+    private boolean hasPreviousStudent() {
+        return currentRow > 1;
+    }
+
+    private boolean hasNextStudent() {
+        ExcelHandler excelHandler = session.getExcelHandler();
+        return excelHandler != null && excelHandler.hasNextStudent(currentRow);
     }
 
     private void saveChangesAndContinue() {
+        saveChanges(null);
+    }
+
+    // afterSave runs once the save has landed; without it the success dialog is shown instead
+    private void saveChanges(Runnable afterSave) {
+        MarksRecalculator.Result input = MarksRecalculator.calculate(
+                exam1EditText.getText().toString(),
+                exam2EditText.getText().toString(),
+                exam3EditText.getText().toString(),
+                aatEditText.getText().toString());
+        if (!input.isValid()) {
+            showError("Error saving changes: " + input.getError());
+            return;
+        }
+        double exam1 = input.getExam1();
+        double exam2 = input.getExam2();
+        double exam3 = input.getExam3();
+        double aat = input.getAat();
+
+        DocumentSession saving = session;
+        int row = currentRow;
         showLoading(true);
-        executor.execute(() -> {
+        saving.execute(() -> {
             try {
-                double exam1 = parseMarkInput(exam1EditText);
-                double exam2 = parseMarkInput(exam2EditText);
-                double exam3 = parseMarkInput(exam3EditText);
-                double aat = parseMarkInput(aatEditText);
-
-                excelHandler.updateMarks(currentRow, exam1, exam2, exam3, aat);
+                ExcelHandler excelHandler = saving.getExcelHandler();
+                excelHandler.updateMarks(row, exam1, exam2, exam3, aat);
                 excelHandler.saveWorkbook();
+                saving.persistChanges();
 
                 mainHandler.post(() -> {
                     showLoading(false);
+                    if (session != saving) {
+                        return;
+                    }
                     hasUnsavedChanges = false;
-                    showSaveSuccessDialog();
+                    hasTypedInput = false;
+                    refreshHistoryButtons();
+                    if (afterSave != null) {
+                        afterSave.run();
+                    } else {
+                        loadRank();
+                        showSaveSuccessDialog();
+                    }
                 });
             } catch (Exception e) {
                 mainHandler.post(() -> {
@@ -225,8 +456,9 @@ public class MarksEditorActivity extends AppCompatActivity {
             }
         });
     }
+
     private void showSaveSuccessDialog() {
-        if (excelHandler.hasNextStudent(currentRow)) {
+        if (hasNextStudent()) {
             AlertDialog dialog = new AlertDialog.Builder(this)
                     .setTitle("Success")
                     .setMessage("Changes saved successfully!")
@@ -254,8 +486,7 @@ public class MarksEditorActivity extends AppCompatActivity {
                 .setTitle("Unsaved Changes")
                 .setMessage("Do you want to save your changes?")
                 .setPositiveButton("Save", (dialogInterface, which) -> {
-                    saveChangesAndContinue();
-                    onConfirm.run();
+                    saveChanges(onConfirm);
                 })
                 .setNegativeButton("Discard", (dialogInterface, which) -> {
                     hasUnsavedChanges = false;
@@ -269,6 +500,21 @@ public class MarksEditorActivity extends AppCompatActivity {
         dialog.getButton(AlertDialog.BUTTON_NEUTRAL).setTextColor(getResources().getColor(R.color.textColor));
     }
 
+    private void showDiscardInputDialog(Runnable onConfirm) {
+        AlertDialog dialog = new AlertDialog.Builder(this)
+                .setTitle("Unsaved Changes")
+                .setMessage("The marks you typed for this student will be lost.")
+                .setPositiveButton("Discard", (dialogInterface, which) -> {
+                    hasTypedInput = false;
+                    onConfirm.run();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+
+        dialog.getButton(AlertDialog.BUTTON_POSITIVE).setTextColor(getResources().getColor(R.color.textColor));
+        dialog.getButton(AlertDialog.BUTTON_NEGATIVE).setTextColor(getResources().getColor(R.color.textColor));
+    }
+
     private void showError(String message) {
         Snackbar.make(findViewById(android.R.id.content),
                 message, Snackbar.LENGTH_LONG).show();
@@ -280,9 +526,10 @@ public class MarksEditorActivity extends AppCompatActivity {
         exam2EditText.setEnabled(!show);
         exam3EditText.setEnabled(!show);
         aatEditText.setEnabled(!show);
-        calculateButton.setEnabled(!show);
         previousButton.setEnabled(!show);
         submitButton.setEnabled(!show);
+        switchDocumentButton.setEnabled(!show);
+        updateHistoryButtons();
     }
 
     @Override
@@ -294,12 +541,24 @@ public class MarksEditorActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // The process may be killed from the background before the session is closed
+        if (session != null && session.isLoaded()) {
+            DocumentSession stopping = session;
+            stopping.execute(stopping::persistChanges);
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        executor.shutdown();
-        if (excelHandler != null) {
-            excelHandler.close();
+        mainHandler.removeCallbacks(recalculate);
+        recalculator.cancel();
+        if (session != null) {
+            session.setCurrentRow(currentRow);
+            sessionManager.release(session);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.example.markscalculator.models;
+
+import java.util.Arrays;
+
+public class RowDelta {
+    public static final int FIELD_EXAM1 = 0;
+    public static final int FIELD_EXAM2 = 1;
+    public static final int FIELD_EXAM3 = 2;
+    public static final int FIELD_AAT = 3;
+    public static final int FIELD_TOTAL = 4;
+    public static final int FIELD_AVERAGE = 5;
+    public static final int FIELD_FINAL = 6;
+    public static final int FIELD_COUNT = 7;
+
+    private final String usn;
+    private final long version;
+    private final int fieldMask;
+    // Indexed by FIELD_*, only entries whose bit is set in fieldMask are meaningful
+    private final double[] values;
+
+    public RowDelta(String usn, long version, int fieldMask, double[] values) {
+        if (values.length != FIELD_COUNT) {
+            throw new IllegalArgumentException("Expected " + FIELD_COUNT + " values, got " + values.length);
+        }
+        this.usn = usn;
+        this.version = version;
+        this.fieldMask = fieldMask;
+        this.values = values.clone();
+    }
+
+    public String getUsn() {
+        return usn;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getFieldMask() {
+        return fieldMask;
+    }
+
+    public boolean hasField(int field) {
+        return (fieldMask & (1 << field)) != 0;
+    }
+
+    public double getValue(int field) {
+        return values[field];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RowDelta)) return false;
+        RowDelta other = (RowDelta) o;
+        if (version != other.version || fieldMask != other.fieldMask || !usn.equals(other.usn)) {
+            return false;
+        }
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            if (hasField(field) && Double.compare(values[field], other.values[field]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * usn.hashCode() + Long.hashCode(version)) + fieldMask;
+    }
+
+    @Override
+    public String toString() {
+        return "RowDelta{" +
+                "usn='" + usn + '\'' +
+                ", version=" + version +
+                ", fieldMask=" + Integer.toBinaryString(fieldMask) +
+                ", values=" + Arrays.toString(values) +
+                '}';
+    }
+}
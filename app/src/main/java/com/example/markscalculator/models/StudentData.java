@@ -1,19 +1,28 @@
 package com.example.markscalculator.models;
 
+import com.example.markscalculator.utils.UsnCodec;
+
+import java.util.Comparator;
+
 public class StudentData {
+    public static final Comparator<StudentData> USN_ORDER = StudentData::compareUsn;
+
     private final String name;
-    private final String usn;
+    // Conforming USNs live only in packedUsn; rawUsn is kept for anything the codec rejects
+    private final long packedUsn;
+    private final String rawUsn;
+    // Unpacked on first use, since sorting and display can ask for it repeatedly
+    private String unpackedUsn;
     private double exam1;
     private double exam2;
     private double exam3;
     private double aat;
-    private double total;
-    private double average;
     private double finalMarks;
 
     public StudentData(String name, String usn, double exam1, double exam2, double exam3) {
         this.name = name;
-        this.usn = usn;
+        this.packedUsn = UsnCodec.pack(usn);
+        this.rawUsn = packedUsn == UsnCodec.NOT_PACKED ? usn : null;
         this.exam1 = exam1;
         this.exam2 = exam2;
         this.exam3 = exam3;
@@ -34,7 +43,38 @@ public class StudentData {
     }
 
     public String getUsn() {
-        return usn;
+        if (packedUsn == UsnCodec.NOT_PACKED) {
+            return rawUsn;
+        }
+        if (unpackedUsn == null) {
+            unpackedUsn = UsnCodec.unpack(packedUsn);
+        }
+        return unpackedUsn;
+    }
+
+    public long getPackedUsn() {
+        return packedUsn;
+    }
+
+    public boolean hasSameUsn(StudentData other) {
+        if (packedUsn != UsnCodec.NOT_PACKED || other.packedUsn != UsnCodec.NOT_PACKED) {
+            return packedUsn == other.packedUsn;
+        }
+        return rawUsn == null ? other.rawUsn == null : rawUsn.equals(other.rawUsn);
+    }
+
+    public int usnHashCode() {
+        if (packedUsn == UsnCodec.NOT_PACKED) {
+            return rawUsn == null ? 0 : rawUsn.hashCode();
+        }
+        return Long.hashCode(packedUsn);
+    }
+
+    public int compareUsn(StudentData other) {
+        if (packedUsn != UsnCodec.NOT_PACKED && other.packedUsn != UsnCodec.NOT_PACKED) {
+            return Long.compare(packedUsn, other.packedUsn);
+        }
+        return String.valueOf(getUsn()).compareTo(String.valueOf(other.getUsn()));
     }
 
     public double getExam1() {
@@ -89,7 +129,7 @@ public class StudentData {
     public String toString() {
         return "StudentData{" +
                 "name='" + name + '\'' +
-                ", usn='" + usn + '\'' +
+                ", usn='" + getUsn() + '\'' +
                 ", exam1=" + exam1 +
                 ", exam2=" + exam2 +
                 ", exam3=" + exam3 +
@@ -0,0 +1,117 @@
+package com.example.markscalculator.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Application-wide thread pools. The I/O lane handles file reads and writes,
+ * the compute lane handles CPU-bound work such as recalculation and ranking.
+ * Both are sized from the core count and their threads are named so they are
+ * easy to find in traces.
+ */
+public class AppExecutors {
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ExecutorService ioExecutor;
+    private final ExecutorService computeExecutor;
+    private final Executor mainThreadExecutor;
+
+    public AppExecutors() {
+        ioExecutor = newPool("mc-io", Math.max(2, CORES), Process.THREAD_PRIORITY_BACKGROUND);
+        computeExecutor = newPool("mc-compute", Math.max(1, CORES - 1), Process.THREAD_PRIORITY_DEFAULT);
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        mainThreadExecutor = mainHandler::post;
+    }
+
+    public ExecutorService io() {
+        return ioExecutor;
+    }
+
+    public ExecutorService compute() {
+        return computeExecutor;
+    }
+
+    public Executor mainThread() {
+        return mainThreadExecutor;
+    }
+
+    /**
+     * Runs tasks one at a time, in submission order, on top of the given pool.
+     * Used to keep operations on a single document ordered without giving it a
+     * dedicated thread.
+     */
+    public static Executor serial(Executor backing) {
+        return new SerialExecutor(backing);
+    }
+
+    private static ExecutorService newPool(String name, int threads, int priority) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new NamedThreadFactory(name, priority));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final int priority;
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        NamedThreadFactory(String prefix, int priority) {
+            this.prefix = prefix;
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(() -> {
+                Process.setThreadPriority(priority);
+                runnable.run();
+            }, prefix + "-" + count.getAndIncrement());
+        }
+    }
+
+    private static class SerialExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private final Executor backing;
+        private Runnable active;
+
+        SerialExecutor(Executor backing) {
+            this.backing = backing;
+        }
+
+        @Override
+        public synchronized void execute(@NonNull Runnable task) {
+            tasks.offer(() -> {
+                try {
+                    task.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            active = tasks.poll();
+            if (active != null) {
+                backing.execute(active);
+            }
+        }
+    }
+}
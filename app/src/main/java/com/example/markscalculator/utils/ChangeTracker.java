@@ -0,0 +1,132 @@
+package com.example.markscalculator.utils;
+
+import com.example.markscalculator.models.RowDelta;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Records which fields of which rows changed since the document was opened.
+ * Every change bumps a document-wide version, so a sync client only has to
+ * remember the last version the server acknowledged.
+ */
+public class ChangeTracker {
+    private static final int STATE_FORMAT = 1;
+    private String sessionId = UUID.randomUUID().toString();
+    private final Map<Integer, TrackedRow> rows = new HashMap<>();
+    private long version = 0;
+
+    private static class TrackedRow {
+        String usn;
+        long version;
+        int fieldMask;
+        final double[] values = new double[RowDelta.FIELD_COUNT];
+    }
+
+    /**
+     * Identifies this tracker's version sequence. Versions from a different
+     * session (e.g. before the app restarted) are not comparable.
+     */
+    public synchronized String getSessionId() {
+        return sessionId;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized void recordChange(int row, String usn, int field, double newValue) {
+        TrackedRow tracked = rows.get(row);
+        if (tracked == null) {
+            tracked = new TrackedRow();
+            rows.put(row, tracked);
+        }
+        tracked.usn = usn;
+        tracked.version = ++version;
+        tracked.fieldMask |= 1 << field;
+        tracked.values[field] = newValue;
+    }
+
+    /**
+     * Latest state of every row changed after the given version, oldest first.
+     * A row carries all fields changed since the document was opened, so a
+     * consumer that missed earlier deltas still ends up with the same values.
+     */
+    public synchronized List<RowDelta> deltasSince(long sinceVersion) {
+        List<RowDelta> deltas = new ArrayList<>();
+        for (TrackedRow tracked : rows.values()) {
+            if (tracked.version > sinceVersion) {
+                deltas.add(new RowDelta(tracked.usn, tracked.version, tracked.fieldMask, tracked.values));
+            }
+        }
+        deltas.sort((a, b) -> Long.compare(a.getVersion(), b.getVersion()));
+        return deltas;
+    }
+
+    public synchronized int getChangedRowCount() {
+        return rows.size();
+    }
+
+    /** Writes the session id, version and every tracked row; {@link #restore} reads it back. */
+    public synchronized void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeByte(STATE_FORMAT);
+        data.writeUTF(sessionId);
+        data.writeLong(version);
+        data.writeInt(rows.size());
+        for (Map.Entry<Integer, TrackedRow> entry : rows.entrySet()) {
+            TrackedRow tracked = entry.getValue();
+            data.writeInt(entry.getKey());
+            data.writeUTF(tracked.usn != null ? tracked.usn : "");
+            data.writeLong(tracked.version);
+            data.writeByte(tracked.fieldMask);
+            for (int field = 0; field < RowDelta.FIELD_COUNT; field++) {
+                if ((tracked.fieldMask & (1 << field)) != 0) {
+                    data.writeDouble(tracked.values[field]);
+                }
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Replaces this tracker's state, session id included, so a sync client
+     * carries on from the version the server last acknowledged.
+     */
+    public synchronized void restore(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int format = data.readUnsignedByte();
+        if (format != STATE_FORMAT) {
+            throw new IOException("Unsupported change log format: " + format);
+        }
+        String restoredSessionId = data.readUTF();
+        long restoredVersion = data.readLong();
+        int count = data.readInt();
+        Map<Integer, TrackedRow> restoredRows = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            int row = data.readInt();
+            TrackedRow tracked = new TrackedRow();
+            tracked.usn = data.readUTF();
+            tracked.version = data.readLong();
+            tracked.fieldMask = data.readUnsignedByte();
+            for (int field = 0; field < RowDelta.FIELD_COUNT; field++) {
+                if ((tracked.fieldMask & (1 << field)) != 0) {
+                    tracked.values[field] = data.readDouble();
+                }
+            }
+            restoredRows.put(row, tracked);
+        }
+        sessionId = restoredSessionId;
+        version = restoredVersion;
+        rows.clear();
+        rows.putAll(restoredRows);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.markscalculator.utils;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A document's change log in app-private storage, so rows that were not
+ * synced yet outlive the ExcelHandler that recorded them (eviction, memory
+ * trimming or the process being killed).
+ */
+public class ChangeTrackerStore {
+    private static final String CHANGES_DIR = "changes";
+
+    private final File file;
+
+    public ChangeTrackerStore(Context context, Uri documentUri) {
+        this(new File(new File(context.getFilesDir(), CHANGES_DIR), ImportCheckpointStore.keyFor(documentUri)));
+    }
+
+    public ChangeTrackerStore(File file) {
+        this.file = file;
+    }
+
+    public synchronized void save(ChangeTracker tracker) throws IOException {
+        if (tracker.getChangedRowCount() == 0 && !file.exists()) {
+            return;
+        }
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            OutputStream buffered = new BufferedOutputStream(out);
+            tracker.writeTo(buffered);
+            buffered.flush();
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not move " + temp + " to " + file);
+        }
+    }
+
+    /** Loads the saved log into the tracker; returns false if nothing was saved. */
+    public synchronized boolean restoreInto(ChangeTracker tracker) throws IOException {
+        if (!file.exists()) {
+            return false;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            tracker.restore(in);
+        }
+        return true;
+    }
+
+    public synchronized void clear() {
+        file.delete();
+    }
+}
@@ -9,26 +9,28 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class CsvHandler {
-    private final Context context;
-    private final Uri fileUri;
+    private final DocumentStreams streams;
     private final List<String[]> csvData = new ArrayList<>();
     private static final String CSV_SEPARATOR = ",";
     private static final int EXPECTED_COLUMNS = 5; // Name, USN, Exam1, Exam2, Exam3
 
     public CsvHandler(Context context, Uri fileUri) throws IOException {
-        this.context = context;
-        this.fileUri = fileUri;
+        this(DocumentStreams.forUri(context, fileUri, "wt"));
+    }
+
+    public CsvHandler(DocumentStreams streams) throws IOException {
+        this.streams = streams;
         loadCsvFile();
     }
 
     private void loadCsvFile() throws IOException {
         try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(context.getContentResolver().openInputStream(fileUri)))) {
+                new InputStreamReader(streams.openInputStream()))) {
             String line;
             int lineNumber = 0;
             while ((line = reader.readLine()) != null) {
                 lineNumber++;
-                String[] row = line.split(CSV_SEPARATOR, -1); // -1 to keep empty values
+                String[] row = parseCsvLine(line);
                 
                 // Validate row data
                 if (row.length != EXPECTED_COLUMNS) {
@@ -46,6 +48,51 @@ public class CsvHandler {
         }
     }
 
+    // Splits one line, honouring double-quoted fields with "" as an escaped quote
+    static String[] parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>(EXPECTED_COLUMNS);
+        StringBuilder field = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inQuotes) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    inQuotes = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+            } else if (c == CSV_SEPARATOR.charAt(0)) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    private static String formatCsvLine(String[] row) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                line.append(CSV_SEPARATOR);
+            }
+            String value = row[i];
+            if (value.contains(CSV_SEPARATOR) || value.contains("\"")) {
+                line.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                line.append(value);
+            }
+        }
+        return line.toString();
+    }
+
     @NonNull
     public StudentData getStudentData(int row) throws IllegalArgumentException {
         if (row < 1 || row >= csvData.size()) {
@@ -108,18 +155,21 @@ public class CsvHandler {
             if (row.length != EXPECTED_COLUMNS) {
                 throw new IOException("Invalid data detected before saving");
             }
-            tempBuffer.append(String.join(CSV_SEPARATOR, row)).append("\n");
+            tempBuffer.append(formatCsvLine(row)).append("\n");
         }
 
         // Only if the above succeeds, write to file
         try (BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(
-                    context.getContentResolver().openOutputStream(fileUri, "wt")))) {
+                new OutputStreamWriter(streams.openOutputStream()))) {
             writer.write(tempBuffer.toString());
             writer.flush();
         }
     }
 
+    public int getStudentCount() {
+        return Math.max(csvData.size() - 1, 0);
+    }
+
     public boolean hasPreviousStudent(int currentRow) {
         return currentRow > 1;
     }
@@ -0,0 +1,88 @@
+package com.example.markscalculator.utils;
+
+import com.example.markscalculator.models.RowDelta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary form of a list of row deltas:
+ * format byte, row count, then per row the USN, version, field mask and the
+ * values of the fields set in the mask. Counts and versions are varints.
+ */
+public final class DeltaCodec {
+    private static final int FORMAT_VERSION = 1;
+
+    private DeltaCodec() {
+    }
+
+    public static byte[] encode(List<RowDelta> deltas) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(deltas.size() * 24 + 8);
+        encode(deltas, buffer);
+        return buffer.toByteArray();
+    }
+
+    public static void encode(List<RowDelta> deltas, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeByte(FORMAT_VERSION);
+        writeVarLong(data, deltas.size());
+        for (RowDelta delta : deltas) {
+            data.writeUTF(delta.getUsn());
+            writeVarLong(data, delta.getVersion());
+            data.writeByte(delta.getFieldMask());
+            for (int field = 0; field < RowDelta.FIELD_COUNT; field++) {
+                if (delta.hasField(field)) {
+                    data.writeDouble(delta.getValue(field));
+                }
+            }
+        }
+        data.flush();
+    }
+
+    public static List<RowDelta> decode(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int format = data.readUnsignedByte();
+        if (format != FORMAT_VERSION) {
+            throw new IOException("Unsupported delta format: " + format);
+        }
+        long count = readVarLong(data);
+        List<RowDelta> deltas = new ArrayList<>((int) Math.min(count, 4096));
+        double[] values = new double[RowDelta.FIELD_COUNT];
+        for (long i = 0; i < count; i++) {
+            String usn = data.readUTF();
+            long version = readVarLong(data);
+            int fieldMask = data.readUnsignedByte();
+            for (int field = 0; field < RowDelta.FIELD_COUNT; field++) {
+                values[field] = (fieldMask & (1 << field)) != 0 ? data.readDouble() : 0.0;
+            }
+            deltas.add(new RowDelta(usn, version, fieldMask, values));
+        }
+        return deltas;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.markscalculator.utils;
+
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * One open class file. All work on the document goes through {@link #execute}
+ * so reads and writes stay ordered while different documents run in parallel.
+ */
+public class DocumentSession {
+    private static final String TAG = "DocumentSession";
+    private final Uri uri;
+    private final String displayName;
+    private final Executor executor;
+    private volatile ExcelHandler excelHandler;
+    private volatile ChangeTrackerStore changeStore;
+    private volatile Exception loadError;
+    private volatile long estimatedBytes;
+    private int currentRow = 1;
+    private int activeUsers = 0;
+
+    DocumentSession(Uri uri, String displayName, Executor executor) {
+        this.uri = uri;
+        this.displayName = displayName;
+        this.executor = executor;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    public ExcelHandler getExcelHandler() {
+        return excelHandler;
+    }
+
+    void setExcelHandler(ExcelHandler excelHandler) {
+        this.excelHandler = excelHandler;
+    }
+
+    void setChangeStore(ChangeTrackerStore changeStore) {
+        this.changeStore = changeStore;
+    }
+
+    // Run on the session queue so the tracker is not written while an edit is half applied
+    public void persistChanges() {
+        ExcelHandler handler = excelHandler;
+        ChangeTrackerStore store = changeStore;
+        if (handler == null || store == null) {
+            return;
+        }
+        try {
+            store.save(handler.getChangeTracker());
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving changes for " + displayName + ": " + e.getMessage());
+        }
+    }
+
+    public boolean isLoaded() {
+        return excelHandler != null;
+    }
+
+    public Exception getLoadError() {
+        return loadError;
+    }
+
+    void setLoadError(Exception loadError) {
+        this.loadError = loadError;
+    }
+
+    public synchronized int getCurrentRow() {
+        return currentRow;
+    }
+
+    public synchronized void setCurrentRow(int currentRow) {
+        this.currentRow = currentRow;
+    }
+
+    long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    void setEstimatedBytes(long estimatedBytes) {
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    synchronized void acquire() {
+        activeUsers++;
+    }
+
+    synchronized void release() {
+        if (activeUsers > 0) {
+            activeUsers--;
+        }
+    }
+
+    synchronized boolean isInUse() {
+        return activeUsers > 0;
+    }
+}
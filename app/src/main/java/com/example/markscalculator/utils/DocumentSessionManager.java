@@ -0,0 +1,266 @@
+package com.example.markscalculator.utils;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps several class files open at once so switching between them does not
+ * re-parse the workbook. Documents are loaded in parallel on the I/O lane and
+ * the least recently used ones that no editor is showing are closed once the
+ * estimated footprint exceeds the memory budget.
+ */
+public class DocumentSessionManager {
+    private static final String TAG = "DocumentSessionManager";
+    // Rough XSSF footprint of one student row (cells, styles, shared strings)
+    private static final long ESTIMATED_BYTES_PER_ROW = 2 * 1024;
+    // Rough XSSF heap cost per byte of compressed .xlsx; larger files are paged to disk
+    private static final long XSSF_HEAP_PER_FILE_BYTE = 250;
+    private static final String SPILL_DIRECTORY = "spill";
+
+    private final Context context;
+    private final AppExecutors executors;
+    private final long memoryBudgetBytes;
+    // Unique per process, so clearing earlier processes' files cannot race with loads in this one
+    private final File spillDirectory;
+    private final LinkedHashMap<Uri, DocumentSession> sessions = new LinkedHashMap<>(8, 0.75f, true);
+
+    public DocumentSessionManager(Context context, AppExecutors executors) {
+        this(context, executors, Runtime.getRuntime().maxMemory() / 3);
+    }
+
+    public DocumentSessionManager(Context context, AppExecutors executors, long memoryBudgetBytes) {
+        this.context = context.getApplicationContext();
+        this.executors = executors;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        File spillRoot = new File(this.context.getNoBackupFilesDir(), SPILL_DIRECTORY);
+        spillDirectory = new File(spillRoot, UUID.randomUUID().toString());
+        // Page files left behind by a process that was killed mid-session
+        executors.io().execute(() -> {
+            File[] stale = spillRoot.listFiles();
+            if (stale != null) {
+                for (File file : stale) {
+                    if (!file.equals(spillDirectory)) {
+                        deleteRecursively(file);
+                    }
+                }
+            }
+        });
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete()) {
+            Log.w(TAG, "Could not delete stale spill file " + file);
+        }
+    }
+
+    /**
+     * Returns the session for the file, starting a background load if it is
+     * not resident yet. Tasks queued with {@link DocumentSession#execute} run
+     * after the load finishes. The caller must {@link #release} the session.
+     */
+    public DocumentSession acquire(Uri uri) {
+        DocumentSession session = getOrLoad(uri);
+        session.acquire();
+        return session;
+    }
+
+    public void release(DocumentSession session) {
+        session.release();
+        evictIfNeeded();
+    }
+
+    public void preload(List<Uri> uris) {
+        for (Uri uri : uris) {
+            getOrLoad(uri);
+        }
+    }
+
+    public synchronized boolean isOpen(Uri uri) {
+        return sessions.containsKey(uri);
+    }
+
+    public synchronized List<DocumentSession> getOpenSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    public void close(Uri uri) {
+        DocumentSession session;
+        synchronized (this) {
+            session = sessions.remove(uri);
+        }
+        if (session != null) {
+            closeSession(session);
+        }
+    }
+
+    public void trimToActive() {
+        List<DocumentSession> evicted = new ArrayList<>();
+        synchronized (this) {
+            Iterator<DocumentSession> iterator = sessions.values().iterator();
+            while (iterator.hasNext()) {
+                DocumentSession session = iterator.next();
+                if (!session.isInUse()) {
+                    iterator.remove();
+                    evicted.add(session);
+                }
+            }
+        }
+        for (DocumentSession session : evicted) {
+            closeSession(session);
+        }
+    }
+
+    private DocumentSession getOrLoad(Uri uri) {
+        DocumentSession session;
+        synchronized (this) {
+            session = sessions.get(uri);
+            if (session != null) {
+                return session;
+            }
+        }
+        String displayName = queryDisplayName(uri);
+        synchronized (this) {
+            session = sessions.get(uri);
+            if (session != null) {
+                return session;
+            }
+            session = new DocumentSession(uri, displayName, AppExecutors.serial(executors.io()));
+            sessions.put(uri, session);
+        }
+
+        DocumentSession loading = session;
+        loading.execute(() -> {
+            try {
+                ExcelHandler handler;
+                long fileSize = queryFileSize(uri);
+                ImportCheckpointStore checkpoint = findImport(uri, fileSize);
+                long heapBudget = memoryBudgetBytes / 4;
+                if (checkpoint != null) {
+                    handler = new ExcelHandler(DocumentStreams.forUri(context, uri, "rwt"),
+                            checkpoint, heapBudget, spillDirectory);
+                    checkpoint.clear();
+                    loading.setEstimatedBytes(heapBudget);
+                } else if (fileSize * XSSF_HEAP_PER_FILE_BYTE > memoryBudgetBytes) {
+                    handler = new ExcelHandler(DocumentStreams.forUri(context, uri, "rwt"),
+                            heapBudget, spillDirectory);
+                    loading.setEstimatedBytes(heapBudget);
+                } else {
+                    handler = new ExcelHandler(context, uri);
+                    loading.setEstimatedBytes(handler.getStudentCount() * ESTIMATED_BYTES_PER_ROW);
+                }
+                ChangeTrackerStore changeStore = new ChangeTrackerStore(context, uri);
+                try {
+                    changeStore.restoreInto(handler.getChangeTracker());
+                } catch (IOException e) {
+                    Log.e(TAG, "Discarding unreadable change log for " + uri + ": " + e.getMessage());
+                    changeStore.clear();
+                }
+                loading.setChangeStore(changeStore);
+                loading.setExcelHandler(handler);
+                Log.d(TAG, "Loaded " + loading.getDisplayName() + " on " + Thread.currentThread().getName());
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading " + uri + ": " + e.getMessage());
+                loading.setLoadError(e);
+                synchronized (this) {
+                    sessions.remove(uri);
+                }
+            }
+            evictIfNeeded();
+        });
+        return session;
+    }
+
+    // A finished BulkImportWorker run, unless the document has been replaced since
+    private ImportCheckpointStore findImport(Uri uri, long fileSize) {
+        try {
+            ImportCheckpointStore checkpoint = ImportCheckpointStore.findComplete(context, uri);
+            if (checkpoint != null && fileSize > 0 && checkpoint.getSourceCopy().length() != fileSize) {
+                Log.w(TAG, "Discarding outdated import of " + uri);
+                checkpoint.clear();
+                return null;
+            }
+            return checkpoint;
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading import of " + uri + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void evictIfNeeded() {
+        List<DocumentSession> evicted = new ArrayList<>();
+        synchronized (this) {
+            long used = 0;
+            for (DocumentSession session : sessions.values()) {
+                used += session.getEstimatedBytes();
+            }
+            // Iteration order is least recently used first
+            Iterator<Map.Entry<Uri, DocumentSession>> iterator = sessions.entrySet().iterator();
+            while (used > memoryBudgetBytes && iterator.hasNext()) {
+                DocumentSession session = iterator.next().getValue();
+                if (session.isInUse() || !session.isLoaded()) {
+                    continue;
+                }
+                iterator.remove();
+                used -= session.getEstimatedBytes();
+                evicted.add(session);
+            }
+        }
+        for (DocumentSession session : evicted) {
+            Log.d(TAG, "Evicting " + session.getDisplayName() + " to stay within memory budget");
+            closeSession(session);
+        }
+    }
+
+    private void closeSession(DocumentSession session) {
+        session.execute(() -> {
+            ExcelHandler handler = session.getExcelHandler();
+            if (handler != null) {
+                session.persistChanges();
+                handler.close();
+                session.setExcelHandler(null);
+            }
+        });
+    }
+
+    private long queryFileSize(Uri uri) {
+        try (Cursor cursor = context.getContentResolver().query(uri,
+                new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading file size: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    private String queryDisplayName(Uri uri) {
+        try (Cursor cursor = context.getContentResolver().query(uri,
+                new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getString(0);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading display name: " + e.getMessage());
+        }
+        return uri.getLastPathSegment();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.markscalculator.utils;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Where a handler reads its document from and writes it back to.
+ * Lets the handlers run against plain files in JVM tests.
+ */
+public interface DocumentStreams {
+    InputStream openInputStream() throws IOException;
+
+    OutputStream openOutputStream() throws IOException;
+
+    static DocumentStreams forUri(Context context, Uri uri, String writeMode) {
+        return new DocumentStreams() {
+            @Override
+            public InputStream openInputStream() throws IOException {
+                InputStream in = context.getContentResolver().openInputStream(uri);
+                if (in == null) {
+                    throw new IOException("Could not open " + uri);
+                }
+                return in;
+            }
+
+            @Override
+            public OutputStream openOutputStream() throws IOException {
+                OutputStream out = context.getContentResolver().openOutputStream(uri, writeMode);
+                if (out == null) {
+                    throw new IOException("Could not open " + uri + " for writing");
+                }
+                return out;
+            }
+        };
+    }
+
+    static DocumentStreams forFile(File file) {
+        return new DocumentStreams() {
+            @Override
+            public InputStream openInputStream() throws IOException {
+                return new FileInputStream(file);
+            }
+
+            @Override
+            public OutputStream openOutputStream() throws IOException {
+                return new FileOutputStream(file);
+            }
+        };
+    }
+}
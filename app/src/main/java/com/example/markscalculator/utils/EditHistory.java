@@ -0,0 +1,121 @@
+package com.example.markscalculator.utils;
+
+/**
+ * Session-wide undo/redo log of single field edits.
+ * Entries live in parallel primitive arrays used as a ring buffer sized from
+ * a memory cap; once full, the oldest edits are dropped. Edits recorded
+ * together (one save) form a group that is undone and redone as a unit.
+ */
+public class EditHistory {
+    // row + field + old + new + group flag
+    public static final int BYTES_PER_ENTRY = 4 + 1 + 8 + 8 + 1;
+
+    public interface Applier {
+        void apply(int row, int field, double value);
+    }
+
+    private final int capacity;
+    private final int[] rows;
+    private final byte[] fields;
+    private final double[] oldValues;
+    private final double[] newValues;
+    private final boolean[] groupStarts;
+
+    private int start = 0;       // ring index of the oldest entry
+    private int appliedCount = 0; // entries that are currently applied (undoable)
+    private int totalCount = 0;   // applied entries plus redoable ones
+    private boolean startNewGroup = true;
+
+    public EditHistory(long memoryCapBytes) {
+        capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, memoryCapBytes / BYTES_PER_ENTRY));
+        rows = new int[capacity];
+        fields = new byte[capacity];
+        oldValues = new double[capacity];
+        newValues = new double[capacity];
+        groupStarts = new boolean[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** The next recorded edit starts a new undo group. */
+    public synchronized void beginGroup() {
+        startNewGroup = true;
+    }
+
+    public synchronized void record(int row, int field, double oldValue, double newValue) {
+        // A new edit discards anything that could have been redone
+        totalCount = appliedCount;
+        if (totalCount == capacity) {
+            dropOldest();
+        }
+        int index = ring(totalCount);
+        rows[index] = row;
+        fields[index] = (byte) field;
+        oldValues[index] = oldValue;
+        newValues[index] = newValue;
+        groupStarts[index] = startNewGroup || totalCount == 0;
+        startNewGroup = false;
+        appliedCount = ++totalCount;
+    }
+
+    public synchronized boolean canUndo() {
+        return appliedCount > 0;
+    }
+
+    public synchronized boolean canRedo() {
+        return appliedCount < totalCount;
+    }
+
+    /** Reverts the latest group and returns its row, or -1 if there is nothing to undo. */
+    public synchronized int undo(Applier applier) {
+        int row = -1;
+        while (appliedCount > 0) {
+            int index = ring(--appliedCount);
+            applier.apply(rows[index], fields[index], oldValues[index]);
+            row = rows[index];
+            if (groupStarts[index]) {
+                break;
+            }
+        }
+        startNewGroup = true;
+        return row;
+    }
+
+    /** Re-applies the next undone group and returns its row, or -1 if there is nothing to redo. */
+    public synchronized int redo(Applier applier) {
+        int row = -1;
+        while (appliedCount < totalCount) {
+            int index = ring(appliedCount++);
+            applier.apply(rows[index], fields[index], newValues[index]);
+            row = rows[index];
+            if (appliedCount == totalCount || groupStarts[ring(appliedCount)]) {
+                break;
+            }
+        }
+        startNewGroup = true;
+        return row;
+    }
+
+    public synchronized void clear() {
+        start = 0;
+        appliedCount = 0;
+        totalCount = 0;
+        startNewGroup = true;
+    }
+
+    private void dropOldest() {
+        start = (start + 1) % capacity;
+        totalCount--;
+        appliedCount = Math.max(0, appliedCount - 1);
+        // The survivor of a partly dropped group becomes a group of its own
+        if (totalCount > 0) {
+            groupStarts[start] = true;
+        }
+    }
+
+    private int ring(int offset) {
+        return (start + offset) % capacity;
+    }
+}
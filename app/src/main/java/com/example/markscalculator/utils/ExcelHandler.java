@@ -2,62 +2,162 @@ package com.example.markscalculator.utils;
 
 import android.content.Context;
 import android.net.Uri;
-import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import com.example.markscalculator.models.RowDelta;
 import com.example.markscalculator.models.StudentData;
 
 public class ExcelHandler {
     private static final String TAG = "ExcelHandler";
     private Workbook workbook;
     private Sheet sheet;
-    private final Context context;
-    private final Uri excelFileUri;
+    private final DocumentStreams streams;
     private int totalRows = 0;
+    private final ChangeTracker changeTracker = new ChangeTracker();
+    private static final int RANK_COLUMN = 9;
+    private static final int PERCENTILE_COLUMN = 10;
+    static final String RANK_TITLE = "Rank";
+    static final String PERCENTILE_TITLE = "Percentile";
+    // Built on first use so opening a file does not pay for it
+    private RankIndex rankIndex;
+    private static final long DEFAULT_HISTORY_BYTES = 256 * 1024;
+    private EditHistory editHistory = new EditHistory(DEFAULT_HISTORY_BYTES);
+    // Text and formula mark cells as they were before their first edit, so undo can put them back
+    private final Map<Long, OriginalCell> originalCells = new HashMap<>();
+    // Set instead of workbook/sheet when the file was opened with a heap budget
+    private PagedStudentStore pagedStore;
+    private File pagedSource;
 
     public ExcelHandler(Context context, Uri fileUri) {
-        this.context = context;
-        this.excelFileUri = fileUri;
+        // Truncate, since the rewritten file can be shorter than the original
+        this(DocumentStreams.forUri(context, fileUri, "rwt"));
+    }
+
+    public ExcelHandler(DocumentStreams streams) {
+        this.streams = streams;
         loadWorkbook();
     }
 
+    /**
+     * Opens the file without building an XSSFWorkbook. The document is copied
+     * to spillDirectory, its rows are streamed into a page file there and at
+     * most heapBudgetBytes of them are kept on the heap. Saving patches the
+     * changed cells into the copy, so the rest of the workbook is kept.
+     */
+    public ExcelHandler(DocumentStreams streams, long heapBudgetBytes, File spillDirectory) {
+        this.streams = streams;
+        loadPaged(heapBudgetBytes, spillDirectory, null);
+    }
+
+    /**
+     * Opens a document that BulkImportWorker has finished reading. The rows
+     * come from the checkpoint instead of the sheet XML and saves patch a copy
+     * of the checkpoint's document, so the file is not parsed a second time.
+     */
+    public ExcelHandler(DocumentStreams streams, ImportCheckpointStore checkpoint,
+                        long heapBudgetBytes, File spillDirectory) {
+        this.streams = streams;
+        loadPaged(heapBudgetBytes, spillDirectory, checkpoint);
+    }
+
     private void loadWorkbook() {
+        long start = System.nanoTime();
+        try (InputStream inputStream = streams.openInputStream()) {
+            workbook = new XSSFWorkbook(inputStream);
+            sheet = workbook.getSheetAt(0); // Get first sheet
+            totalRows = sheet.getLastRowNum();
+            StartupTimings.recordWorkbookLoad(start);
+            Log.d(TAG, "Workbook loaded successfully. Total rows: " + totalRows);
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading workbook: " + e.getMessage());
+            throw new RuntimeException("Failed to load Excel file", e);
+        }
+    }
+
+    private void loadPaged(long heapBudgetBytes, File spillDirectory, ImportCheckpointStore checkpoint) {
+        long start = System.nanoTime();
         try {
-            InputStream inputStream = context.getContentResolver().openInputStream(excelFileUri);
-            if (inputStream != null) {
-                workbook = new XSSFWorkbook(inputStream);
-                sheet = workbook.getSheetAt(0); // Get first sheet
-                totalRows = sheet.getLastRowNum();
-                inputStream.close();
-                Log.d(TAG, "Workbook loaded successfully. Total rows: " + totalRows);
+            pagedStore = new PagedStudentStore(spillDirectory, heapBudgetBytes);
+            // Read from a file so the package is not buffered on the heap; saving patches this copy
+            pagedSource = File.createTempFile("source", ".xlsx", spillDirectory);
+            try (InputStream inputStream = checkpoint != null
+                    ? new FileInputStream(checkpoint.getSourceCopy()) : streams.openInputStream();
+                 OutputStream outputStream = new FileOutputStream(pagedSource)) {
+                XlsxRowReader.copy(inputStream, outputStream);
+            }
+            double[] values = new double[RowDelta.FIELD_COUNT];
+            XlsxRowReader.RowHandler appendRow = (rowIndex, cells) -> {
+                if (rowIndex == 0) {
+                    return;
+                }
+                for (int field = 0; field < values.length; field++) {
+                    values[field] = parseMark(cells[field + 2]);
+                }
+                pagedStore.appendRow(rowIndex, cells[0] != null ? cells[0] : "",
+                        cells[1] != null ? cells[1] : "", values);
+            };
+            if (checkpoint != null) {
+                checkpoint.read(appendRow);
             } else {
-                Log.e(TAG, "Failed to open input stream");
-                throw new IOException("Could not open excel file");
+                XlsxRowReader.read(pagedSource, RowDelta.FIELD_COUNT + 2, appendRow);
             }
+            pagedStore.finishLoading();
+            totalRows = pagedStore.getRowCount();
+            StartupTimings.recordWorkbookLoad(start);
+            Log.d(TAG, "Workbook paged in successfully. Total rows: " + totalRows);
         } catch (IOException e) {
             Log.e(TAG, "Error loading workbook: " + e.getMessage());
+            if (pagedStore != null) {
+                pagedStore.close();
+            }
+            deletePagedSource();
             throw new RuntimeException("Failed to load Excel file", e);
         }
     }
 
+    // NaN marks a cell that held no number, as in updateCell
+    static double parseMark(String value) {
+        if (value == null || value.isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    public boolean isPaged() {
+        return pagedStore != null;
+    }
+
     public StudentData getStudentData(int rowIndex) {
         try {
             if (rowIndex < 1 || rowIndex > totalRows) {
                 Log.e(TAG, "Invalid row index: " + rowIndex);
                 return null;
             }
+            if (pagedStore != null) {
+                return pagedStore.getStudentData(rowIndex);
+            }
 
             Row row = sheet.getRow(rowIndex);
             if (row != null) {
@@ -96,19 +196,29 @@ public class ExcelHandler {
     }
 
     private double getCellValueAsDouble(Cell cell) {
-        if (cell == null) return 0.0;
+        double value = getCellNumber(cell);
+        return Double.isNaN(value) ? 0.0 : value;
+    }
+
+    // NaN when the cell is absent or holds nothing that reads as a number
+    private double getCellNumber(Cell cell) {
+        if (cell == null) return Double.NaN;
         try {
             switch (cell.getCellType()) {
                 case NUMERIC:
                     return cell.getNumericCellValue();
                 case STRING:
-                    return Double.parseDouble(cell.getStringCellValue());
+                    String text = cell.getStringCellValue().trim();
+                    return text.isEmpty() ? Double.NaN : Double.parseDouble(text);
+                case FORMULA:
+                    return cell.getCachedFormulaResultType() == CellType.NUMERIC
+                            ? cell.getNumericCellValue() : Double.NaN;
                 default:
-                    return 0.0;
+                    return Double.NaN;
             }
         } catch (Exception e) {
             Log.e(TAG, "Error reading numeric cell value: " + e.getMessage());
-            return 0.0;
+            return Double.NaN;
         }
     }
 
@@ -119,29 +229,45 @@ public class ExcelHandler {
                 return;
             }
 
-            Row row = sheet.getRow(rowIndex);
-            if (row == null) {
-                Log.e(TAG, "Row not found: " + rowIndex);
-                return;
+            Row row = null;
+            String usn;
+            if (pagedStore != null) {
+                if (!pagedStore.isPresent(rowIndex)) {
+                    Log.e(TAG, "Row not found: " + rowIndex);
+                    return;
+                }
+                usn = pagedStore.getUsn(rowIndex);
+            } else {
+                row = sheet.getRow(rowIndex);
+                if (row == null) {
+                    Log.e(TAG, "Row not found: " + rowIndex);
+                    return;
+                }
+                usn = getCellValueAsString(row.getCell(1));
             }
+            editHistory.beginGroup();
 
             // Update exam marks
-            updateCell(row, 2, exam1);
-            updateCell(row, 3, exam2);
-            updateCell(row, 4, exam3);
-            updateCell(row, 5, aat);
+            updateCell(rowIndex, row, usn, RowDelta.FIELD_EXAM1, exam1);
+            updateCell(rowIndex, row, usn, RowDelta.FIELD_EXAM2, exam2);
+            updateCell(rowIndex, row, usn, RowDelta.FIELD_EXAM3, exam3);
+            updateCell(rowIndex, row, usn, RowDelta.FIELD_AAT, aat);
 
             // Calculate and update total
-            double total = exam1 + exam2 + exam3;
-            updateCell(row, 6, total);
+            double total = MarksScheme.total(exam1, exam2, exam3);
+            updateCell(rowIndex, row, usn, RowDelta.FIELD_TOTAL, total);
 
             // Calculate and update average (out of 30)
-            double average = (total / 50)*10;
-            updateCell(row, 7, average);
+            double average = MarksScheme.average(total);
+            updateCell(rowIndex, row, usn, RowDelta.FIELD_AVERAGE, average);
 
             // Calculate and update final marks
-            double finalMarks = average + aat;
-            updateCell(row, 8, finalMarks);
+            double finalMarks = MarksScheme.finalMarks(average, aat);
+            updateCell(rowIndex, row, usn, RowDelta.FIELD_FINAL, finalMarks);
+
+            if (rankIndex != null) {
+                rankIndex.update(rowIndex, finalMarks);
+            }
 
             Log.d(TAG, "Marks updated successfully for row " + rowIndex);
         } catch (Exception e) {
@@ -149,6 +275,101 @@ public class ExcelHandler {
         }
     }
 
+    // Delta fields map onto columns 2..8 in order; row is null in paged mode
+    private void updateCell(int rowIndex, Row row, String usn, int field, double value) {
+        int columnIndex = field + 2;
+        double oldValue;
+        if (row == null) {
+            oldValue = pagedStore.getValue(rowIndex, field);
+        } else {
+            // NaN stands for a cell that held no number, so undo can blank it again
+            oldValue = getCellNumber(row.getCell(columnIndex));
+        }
+        if (Double.compare(oldValue, value) == 0) {
+            // Leaves text and formula cells that already read as this value untouched
+            return;
+        }
+        changeTracker.recordChange(rowIndex, usn, field, value);
+        editHistory.record(rowIndex, field, oldValue, value);
+        if (row == null) {
+            pagedStore.setValue(rowIndex, field, value);
+        } else {
+            rememberOriginal(rowIndex, field, row.getCell(columnIndex), oldValue);
+            updateCell(row, columnIndex, value);
+        }
+    }
+
+    // Only the first overwrite of a text or formula cell is kept; numeric cells undo from the history alone
+    private void rememberOriginal(int rowIndex, int field, Cell cell, double value) {
+        if (cell == null || (cell.getCellType() != CellType.STRING && cell.getCellType() != CellType.FORMULA)) {
+            return;
+        }
+        long key = originalCellKey(rowIndex, field);
+        if (!originalCells.containsKey(key)) {
+            originalCells.put(key, new OriginalCell(cell, value));
+        }
+    }
+
+    private static long originalCellKey(int rowIndex, int field) {
+        return ((long) rowIndex << 3) | field;
+    }
+
+    public boolean canUndo() {
+        return editHistory.canUndo();
+    }
+
+    public boolean canRedo() {
+        return editHistory.canRedo();
+    }
+
+    // Both return the row that changed, or -1 if there was nothing to do
+    public int undo() {
+        return editHistory.undo(this::applyHistoryValue);
+    }
+
+    public int redo() {
+        return editHistory.redo(this::applyHistoryValue);
+    }
+
+    public void setHistoryMemoryCap(long bytes) {
+        editHistory = new EditHistory(bytes);
+    }
+
+    private void applyHistoryValue(int rowIndex, int field, double value) {
+        if (pagedStore != null) {
+            pagedStore.setValue(rowIndex, field, value);
+            recordHistoryChange(rowIndex, pagedStore.getUsn(rowIndex), field, value);
+            return;
+        }
+        Row row = sheet.getRow(rowIndex);
+        if (row == null) {
+            return;
+        }
+        int columnIndex = field + 2;
+        OriginalCell original = originalCells.get(originalCellKey(rowIndex, field));
+        if (original != null && Double.compare(original.value, value) == 0) {
+            Cell cell = row.getCell(columnIndex);
+            original.restore(cell != null ? cell : row.createCell(columnIndex));
+        } else if (Double.isNaN(value)) {
+            Cell cell = row.getCell(columnIndex);
+            if (cell != null) {
+                row.removeCell(cell);
+            }
+        } else {
+            updateCell(row, columnIndex, value);
+        }
+
+        recordHistoryChange(rowIndex, getCellValueAsString(row.getCell(1)), field, value);
+    }
+
+    private void recordHistoryChange(int rowIndex, String usn, int field, double value) {
+        double storedValue = Double.isNaN(value) ? 0.0 : value;
+        changeTracker.recordChange(rowIndex, usn, field, storedValue);
+        if (field == RowDelta.FIELD_FINAL && rankIndex != null) {
+            rankIndex.update(rowIndex, storedValue);
+        }
+    }
+
     private void updateCell(Row row, int columnIndex, double value) {
         Cell cell = row.getCell(columnIndex);
         if (cell == null) {
@@ -157,24 +378,199 @@ public class ExcelHandler {
         cell.setCellValue(value);
     }
 
+    public int getRank(int rowIndex) {
+        return getRankIndex().getRank(rowIndex);
+    }
+
+    public double getPercentile(int rowIndex) {
+        return getRankIndex().getPercentile(rowIndex);
+    }
+
+    public int getRankedCount() {
+        return getRankIndex().size();
+    }
+
+    public List<StudentData> getTopStudents(int count) {
+        List<StudentData> top = new ArrayList<>();
+        for (int rowIndex : getRankIndex().getTopRows(count)) {
+            StudentData student = getStudentData(rowIndex);
+            if (student != null) {
+                top.add(student);
+            }
+        }
+        return top;
+    }
+
+    private RankIndex getRankIndex() {
+        if (rankIndex == null) {
+            RankIndex index = new RankIndex(MarksScheme.MAX_FINAL_MARKS, totalRows);
+            for (int rowIndex = 1; rowIndex <= totalRows; rowIndex++) {
+                if (pagedStore != null) {
+                    if (pagedStore.hasUsn(rowIndex)) {
+                        index.update(rowIndex, MarksScheme.finalMarks(
+                                pagedMark(rowIndex, RowDelta.FIELD_EXAM1),
+                                pagedMark(rowIndex, RowDelta.FIELD_EXAM2),
+                                pagedMark(rowIndex, RowDelta.FIELD_EXAM3),
+                                pagedMark(rowIndex, RowDelta.FIELD_AAT)));
+                    }
+                    continue;
+                }
+                Row row = sheet.getRow(rowIndex);
+                if (row == null || getCellValueAsString(row.getCell(1)).trim().isEmpty()) {
+                    continue;
+                }
+                index.update(rowIndex, MarksScheme.finalMarks(
+                        getCellValueAsDouble(row.getCell(2)),
+                        getCellValueAsDouble(row.getCell(3)),
+                        getCellValueAsDouble(row.getCell(4)),
+                        getCellValueAsDouble(row.getCell(5))));
+            }
+            rankIndex = index;
+            Log.d(TAG, "Rank index built for " + index.size() + " students");
+        }
+        return rankIndex;
+    }
+
+    private double pagedMark(int rowIndex, int field) {
+        double value = pagedStore.getValue(rowIndex, field);
+        return Double.isNaN(value) ? 0.0 : value;
+    }
+
+    private void writeRankColumns() {
+        Row header = sheet.getRow(0);
+        if (header == null) {
+            return;
+        }
+        String[] titles = new String[Math.max(header.getLastCellNum(), 0)];
+        for (int column = 0; column < titles.length; column++) {
+            titles[column] = getCellValueAsString(header.getCell(column));
+        }
+        int[] columns = resolveRankColumns(titles);
+        if (columns == null) {
+            return;
+        }
+        RankIndex index = getRankIndex();
+        setHeader(header, columns[0], RANK_TITLE);
+        setHeader(header, columns[1], PERCENTILE_TITLE);
+        for (int rowIndex = 1; rowIndex <= totalRows; rowIndex++) {
+            int rank = index.getRank(rowIndex);
+            Row row = sheet.getRow(rowIndex);
+            if (rank < 0 || row == null) {
+                continue;
+            }
+            updateCell(row, columns[0], rank);
+            updateCell(row, columns[1], Math.round(index.getPercentile(rowIndex) * 100) / 100.0);
+        }
+    }
+
+    /**
+     * Picks the rank and percentile columns from the header titles: columns
+     * already titled Rank/Percentile, else J/K while their headers are blank,
+     * else the first columns after the last titled one. Returns null when the
+     * sheet has no header row, in which case ranks are not written at all.
+     */
+    static int[] resolveRankColumns(String[] titles) {
+        if (titles == null) {
+            return null;
+        }
+        int rank = findTitle(titles, RANK_TITLE);
+        int percentile = findTitle(titles, PERCENTILE_TITLE);
+        int next = RANK_COLUMN;
+        for (int column = 0; column < titles.length; column++) {
+            if (!isBlank(titles, column)) {
+                next = Math.max(next, column + 1);
+            }
+        }
+        if (rank < 0) {
+            rank = isBlank(titles, RANK_COLUMN) && percentile != RANK_COLUMN ? RANK_COLUMN : next;
+        }
+        next = Math.max(next, rank + 1);
+        if (percentile < 0) {
+            percentile = isBlank(titles, PERCENTILE_COLUMN) && rank != PERCENTILE_COLUMN ? PERCENTILE_COLUMN : next;
+        }
+        return new int[]{rank, percentile};
+    }
+
+    private static int findTitle(String[] titles, String title) {
+        for (int column = RANK_COLUMN; column < titles.length; column++) {
+            if (titles[column] != null && titles[column].trim().equalsIgnoreCase(title)) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(String[] titles, int column) {
+        return column >= titles.length || titles[column] == null || titles[column].trim().isEmpty();
+    }
+
+    private void setHeader(Row header, int columnIndex, String title) {
+        Cell cell = header.getCell(columnIndex);
+        if (cell == null) {
+            cell = header.createCell(columnIndex);
+        }
+        if (!title.equalsIgnoreCase(getCellValueAsString(cell).trim())) {
+            cell.setCellValue(title);
+        }
+    }
+
     public void saveWorkbook() {
         try {
-            ParcelFileDescriptor pfd = context.getContentResolver()
-                    .openFileDescriptor(excelFileUri, "rw");
-            if (pfd != null) {
-                FileOutputStream fileOutputStream =
-                        new FileOutputStream(pfd.getFileDescriptor());
-                workbook.write(fileOutputStream);
-                fileOutputStream.close();
-                pfd.close();
-                Log.d(TAG, "Workbook saved successfully");
+            if (pagedStore != null) {
+                savePaged();
+                return;
             }
+            writeRankColumns();
+            try (OutputStream outputStream = streams.openOutputStream()) {
+                workbook.write(outputStream);
+            }
+            Log.d(TAG, "Workbook saved successfully");
         } catch (IOException e) {
             Log.e(TAG, "Error saving workbook: " + e.getMessage());
             throw new RuntimeException("Failed to save Excel file", e);
         }
     }
 
+    // Patches the copy taken at load time, then writes it over the document
+    private void savePaged() throws IOException {
+        File patched = File.createTempFile("patched", ".xlsx", pagedSource.getParentFile());
+        try {
+            XlsxSheetPatcher.patch(pagedSource, patched, pagedStore, getRankIndex());
+            try (InputStream inputStream = new FileInputStream(patched);
+                 OutputStream outputStream = streams.openOutputStream()) {
+                XlsxRowReader.copy(inputStream, outputStream);
+            }
+            // The next save compares against what was just written
+            if (!patched.renameTo(pagedSource)) {
+                throw new IOException("Could not replace " + pagedSource);
+            }
+            Log.d(TAG, "Workbook saved successfully");
+        } finally {
+            if (patched.exists() && !patched.delete()) {
+                Log.w(TAG, "Could not delete " + patched);
+            }
+        }
+    }
+
+    private void deletePagedSource() {
+        if (pagedSource != null && pagedSource.exists() && !pagedSource.delete()) {
+            Log.w(TAG, "Could not delete " + pagedSource);
+        }
+        pagedSource = null;
+    }
+
+    public ChangeTracker getChangeTracker() {
+        return changeTracker;
+    }
+
+    public void exportDelta(OutputStream out, long sinceVersion) throws IOException {
+        DeltaCodec.encode(changeTracker.deltasSince(sinceVersion), out);
+    }
+
+    public int getStudentCount() {
+        return totalRows;
+    }
+
     public boolean hasNextStudent(int currentRow) {
         return currentRow < totalRows;
     }
@@ -185,6 +581,12 @@ public class ExcelHandler {
 
     public void close() {
         try {
+            originalCells.clear();
+            if (pagedStore != null) {
+                pagedStore.close();
+                pagedStore = null;
+            }
+            deletePagedSource();
             if (workbook != null) {
                 workbook.close();
                 Log.d(TAG, "Workbook closed successfully");
@@ -193,4 +595,24 @@ public class ExcelHandler {
             Log.e(TAG, "Error closing workbook: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    private static final class OriginalCell {
+        final double value;
+        final boolean formula;
+        final String text;
+
+        OriginalCell(Cell cell, double value) {
+            this.value = value;
+            formula = cell.getCellType() == CellType.FORMULA;
+            text = formula ? cell.getCellFormula() : cell.getStringCellValue();
+        }
+
+        void restore(Cell cell) {
+            if (formula) {
+                cell.setCellFormula(text);
+            } else {
+                cell.setCellValue(text);
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.markscalculator.utils;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.example.markscalculator.models.RowDelta;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Chunked, resumable copy of an imported class file kept in app-private storage:
+ * a copy of the document plus its rows as text. Each chunk is written to a temp
+ * file and renamed before the progress file is advanced, so a crash can only
+ * ever lose the chunk that was in flight.
+ */
+public class ImportCheckpointStore {
+    private static final String IMPORTS_DIR = "imports";
+    private static final String PROGRESS_FILE = "progress";
+    private static final String KEY_NEXT_ROW = "nextRow";
+    private static final String KEY_TOTAL_ROWS = "totalRows";
+    private static final String KEY_CHUNKS = "chunks";
+    private static final String KEY_COMPLETE = "complete";
+    private static final String SOURCE_FILE = "source.xlsx";
+    private static final String SEPARATOR = "\t";
+    // Name, USN, then one column per RowDelta field, as ExcelHandler reads them
+    public static final int COLUMN_COUNT = RowDelta.FIELD_COUNT + 2;
+
+    private final File directory;
+    private int nextRow = 1;
+    private int totalRows = -1;
+    private int chunkCount = 0;
+    private boolean complete = false;
+
+    public ImportCheckpointStore(Context context, Uri sourceUri) throws IOException {
+        this(directoryFor(context, sourceUri));
+    }
+
+    public ImportCheckpointStore(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create import directory " + directory);
+        }
+        loadProgress();
+    }
+
+    /** Returns the finished import of the document, or null without creating one. */
+    public static ImportCheckpointStore findComplete(Context context, Uri sourceUri) throws IOException {
+        File directory = directoryFor(context, sourceUri);
+        if (!directory.isDirectory()) {
+            return null;
+        }
+        ImportCheckpointStore store = new ImportCheckpointStore(directory);
+        return store.isComplete() ? store : null;
+    }
+
+    private static File directoryFor(Context context, Uri sourceUri) {
+        return new File(new File(context.getFilesDir(), IMPORTS_DIR), keyFor(sourceUri));
+    }
+
+    // Also names change logs and work, so two documents must never share a key
+    public static String keyFor(Uri sourceUri) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(sourceUri.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(String.format(Locale.US, "%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android runtime provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void loadProgress() throws IOException {
+        File progressFile = new File(directory, PROGRESS_FILE);
+        if (!progressFile.exists()) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (FileInputStream in = new FileInputStream(progressFile)) {
+            properties.load(in);
+        }
+        nextRow = Integer.parseInt(properties.getProperty(KEY_NEXT_ROW, "1"));
+        totalRows = Integer.parseInt(properties.getProperty(KEY_TOTAL_ROWS, "-1"));
+        chunkCount = Integer.parseInt(properties.getProperty(KEY_CHUNKS, "0"));
+        complete = Boolean.parseBoolean(properties.getProperty(KEY_COMPLETE, "false"));
+    }
+
+    private void saveProgress() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_NEXT_ROW, String.valueOf(nextRow));
+        properties.setProperty(KEY_TOTAL_ROWS, String.valueOf(totalRows));
+        properties.setProperty(KEY_CHUNKS, String.valueOf(chunkCount));
+        properties.setProperty(KEY_COMPLETE, String.valueOf(complete));
+
+        File temp = new File(directory, PROGRESS_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            properties.store(out, null);
+            out.getFD().sync();
+        }
+        replace(temp, new File(directory, PROGRESS_FILE));
+    }
+
+    public synchronized int getNextRow() {
+        return nextRow;
+    }
+
+    public synchronized int getTotalRows() {
+        return totalRows;
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    // The rows are read from this copy, so a resumed import sees the same bytes
+    public File getSourceCopy() {
+        return new File(directory, SOURCE_FILE);
+    }
+
+    public synchronized void saveSourceCopy(InputStream in) throws IOException {
+        File temp = new File(directory, SOURCE_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            XlsxRowReader.copy(in, out);
+            out.getFD().sync();
+        }
+        replace(temp, getSourceCopy());
+    }
+
+    public synchronized void setTotalRows(int totalRows) throws IOException {
+        if (this.totalRows != totalRows) {
+            this.totalRows = totalRows;
+            saveProgress();
+        }
+    }
+
+    /**
+     * Appends rows [getNextRow(), getNextRow() + rows.size()) as one chunk.
+     * Each row holds the first COLUMN_COUNT cells; null entries mark rows the
+     * sheet does not contain.
+     */
+    public synchronized void writeChunk(List<String[]> rows) throws IOException {
+        File temp = new File(directory, chunkName(chunkCount) + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp);
+             BufferedWriter writer = new BufferedWriter(
+                     new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            int row = nextRow;
+            for (String[] cells : rows) {
+                writer.write(formatRow(row++, cells));
+                writer.newLine();
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+        replace(temp, new File(directory, chunkName(chunkCount)));
+
+        chunkCount++;
+        nextRow += rows.size();
+        saveProgress();
+    }
+
+    public synchronized void markComplete() throws IOException {
+        complete = true;
+        saveProgress();
+    }
+
+    // Replays the rows the way XlsxRowReader reports them, with empty cells as ""
+    synchronized void read(XlsxRowReader.RowHandler handler) throws IOException {
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            File chunkFile = new File(directory, chunkName(chunk));
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(chunkFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(SEPARATOR, -1);
+                    if (fields.length == 1) {
+                        continue;
+                    }
+                    if (fields.length != COLUMN_COUNT + 1) {
+                        throw new IOException("Corrupted import checkpoint line: " + line);
+                    }
+                    String[] cells = new String[COLUMN_COUNT];
+                    System.arraycopy(fields, 1, cells, 0, COLUMN_COUNT);
+                    handler.onRow(Integer.parseInt(fields[0]), cells);
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+        nextRow = 1;
+        totalRows = -1;
+        chunkCount = 0;
+        complete = false;
+    }
+
+    private static String formatRow(int row, String[] cells) {
+        StringBuilder line = new StringBuilder().append(row);
+        if (cells != null) {
+            for (int column = 0; column < COLUMN_COUNT; column++) {
+                line.append(SEPARATOR).append(clean(cells[column]));
+            }
+        }
+        return line.toString();
+    }
+
+    private static String clean(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static String chunkName(int index) {
+        return String.format(Locale.US, "chunk_%05d.tsv", index);
+    }
+
+    private static void replace(File source, File target) throws IOException {
+        if (!source.renameTo(target)) {
+            throw new IOException("Could not move " + source + " to " + target);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.markscalculator.utils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses and scores editor input on a background executor. Each submit starts a new
+ * generation; results from older generations are dropped instead of delivered.
+ */
+public class MarksRecalculator {
+    public interface Listener {
+        void onResult(Result result);
+    }
+
+    public static final class Result {
+        private final String error;
+        private final double exam1;
+        private final double exam2;
+        private final double exam3;
+        private final double aat;
+        private final double total;
+        private final double average;
+        private final double finalMarks;
+
+        private Result(String error, double exam1, double exam2, double exam3, double aat) {
+            this.error = error;
+            this.exam1 = exam1;
+            this.exam2 = exam2;
+            this.exam3 = exam3;
+            this.aat = aat;
+            this.total = MarksScheme.total(exam1, exam2, exam3);
+            this.average = MarksScheme.average(total);
+            this.finalMarks = MarksScheme.finalMarks(average, aat);
+        }
+
+        public boolean isValid() { return error == null; }
+        public String getError() { return error; }
+        public double getExam1() { return exam1; }
+        public double getExam2() { return exam2; }
+        public double getExam3() { return exam3; }
+        public double getAat() { return aat; }
+        public double getTotal() { return total; }
+        public double getAverage() { return average; }
+        public double getFinalMarks() { return finalMarks; }
+    }
+
+    private final Executor computeExecutor;
+    private final Executor resultExecutor;
+    private final Listener listener;
+    private final AtomicLong generation = new AtomicLong();
+
+    public MarksRecalculator(Executor computeExecutor, Executor resultExecutor, Listener listener) {
+        this.computeExecutor = computeExecutor;
+        this.resultExecutor = resultExecutor;
+        this.listener = listener;
+    }
+
+    public void submit(String exam1, String exam2, String exam3, String aat) {
+        long submitted = generation.incrementAndGet();
+        computeExecutor.execute(() -> {
+            if (generation.get() != submitted) {
+                return;
+            }
+            Result result = calculate(exam1, exam2, exam3, aat);
+            resultExecutor.execute(() -> {
+                if (generation.get() == submitted) {
+                    listener.onResult(result);
+                }
+            });
+        });
+    }
+
+    // Drops any result still in flight
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    public static Result calculate(String exam1, String exam2, String exam3, String aat) {
+        try {
+            return new Result(null,
+                    parseMark(exam1, MarksScheme.MAX_EXAM_MARKS),
+                    parseMark(exam2, MarksScheme.MAX_EXAM_MARKS),
+                    parseMark(exam3, MarksScheme.MAX_EXAM_MARKS),
+                    parseMark(aat, MarksScheme.MAX_AAT_MARKS));
+        } catch (NumberFormatException e) {
+            return new Result(e.getMessage(), 0, 0, 0, 0);
+        }
+    }
+
+    private static double parseMark(String input, double max) {
+        String trimmed = input == null ? "" : input.trim();
+        if (trimmed.isEmpty()) {
+            return 0.0;
+        }
+        double value;
+        try {
+            value = Double.parseDouble(trimmed);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Please enter valid marks");
+        }
+        if (Double.isNaN(value) || value < 0 || value > max) {
+            throw new NumberFormatException("Marks must be between 0 and " + (int) max);
+        }
+        return value;
+    }
+}
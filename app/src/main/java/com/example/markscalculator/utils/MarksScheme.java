@@ -0,0 +1,30 @@
+package com.example.markscalculator.utils;
+
+/**
+ * The CIE marks scheme: three exams out of 50, scaled to 30, plus AAT.
+ */
+public final class MarksScheme {
+    public static final double MAX_EXAM_MARKS = 50;
+    public static final double MAX_AAT_MARKS = 50;
+    public static final double MAX_FINAL_MARKS = 30 + MAX_AAT_MARKS;
+
+    private MarksScheme() {
+    }
+
+    public static double total(double exam1, double exam2, double exam3) {
+        return exam1 + exam2 + exam3;
+    }
+
+    // Average out of 30
+    public static double average(double total) {
+        return (total / 50) * 10;
+    }
+
+    public static double finalMarks(double average, double aat) {
+        return average + aat;
+    }
+
+    public static double finalMarks(double exam1, double exam2, double exam3, double aat) {
+        return finalMarks(average(total(exam1, exam2, exam3)), aat);
+    }
+}
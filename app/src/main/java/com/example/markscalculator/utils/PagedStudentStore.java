@@ -0,0 +1,367 @@
+package com.example.markscalculator.utils;
+
+import android.util.Log;
+
+import com.example.markscalculator.models.RowDelta;
+import com.example.markscalculator.models.StudentData;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Row storage for class files too large to keep in memory. Every row is a
+ * fixed-size record in a memory-mapped page file; names and unpackable USNs
+ * go to a side file. Only a bounded number of recently used pages are held on
+ * the heap, and dirty pages are written back to the mapping when evicted.
+ */
+public class PagedStudentStore {
+    private static final String TAG = "PagedStudentStore";
+    static final int PAGE_ROWS = 256;
+    private static final int SEGMENT_ROWS = PAGE_ROWS * 256;
+    private static final int FIELD_COUNT = RowDelta.FIELD_COUNT;
+    private static final int FLAG_PRESENT = 1;
+    private static final int FLAG_HAS_USN = 2;
+
+    // flags, packed USN, field values, string offset, string length
+    private static final int FIELDS_OFFSET = 4 + 8;
+    private static final int STRING_OFFSET = FIELDS_OFFSET + FIELD_COUNT * 8;
+    private static final int RECORD_BYTES = STRING_OFFSET + 8 + 4;
+    // Heap cost of a resident page including the name strings
+    private static final long PAGE_HEAP_BYTES = PAGE_ROWS * (RECORD_BYTES + 96L);
+
+    private final File pageFile;
+    private final File stringFile;
+    private final int maxResidentPages;
+    private final LinkedHashMap<Integer, Page> residentPages = new LinkedHashMap<>(16, 0.75f, true);
+
+    private DataOutputStream recordOut;
+    private DataOutputStream stringOut;
+    private final ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+    private final DataOutputStream scratchOut = new DataOutputStream(scratch);
+    private long stringBytes;
+    private int rowCount;
+
+    private RandomAccessFile pageAccess;
+    private FileChannel pageChannel;
+    private RandomAccessFile stringAccess;
+    private MappedByteBuffer[] segments;
+
+    public PagedStudentStore(File directory, long heapBudgetBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        pageFile = File.createTempFile("rows", ".pages", directory);
+        stringFile = File.createTempFile("rows", ".strings", directory);
+        maxResidentPages = (int) Math.max(2, Math.min(Integer.MAX_VALUE, heapBudgetBytes / PAGE_HEAP_BYTES));
+        recordOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pageFile), 64 * 1024));
+        stringOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(stringFile), 64 * 1024));
+        // Record 0 stands for the header row so that record index == sheet row index
+        recordOut.write(new byte[RECORD_BYTES]);
+    }
+
+    /**
+     * Appends a row while loading. Rows must arrive in increasing order; any
+     * gap is stored as missing rows. Field values use NaN for empty cells.
+     */
+    public void appendRow(int rowIndex, String name, String usn, double[] values) throws IOException {
+        if (recordOut == null) {
+            throw new IllegalStateException("Store is no longer loading");
+        }
+        if (rowIndex <= rowCount) {
+            throw new IllegalArgumentException("Rows must be appended in order: " + rowIndex);
+        }
+        while (rowCount < rowIndex - 1) {
+            writeMissingRecord();
+        }
+
+        long packedUsn = UsnCodec.pack(usn);
+        scratch.reset();
+        writeString(scratchOut, name);
+        writeString(scratchOut, packedUsn == UsnCodec.NOT_PACKED ? usn : "");
+        int length = scratch.size();
+        scratch.writeTo(stringOut);
+
+        recordOut.writeInt(usn.trim().isEmpty() ? FLAG_PRESENT : FLAG_PRESENT | FLAG_HAS_USN);
+        recordOut.writeLong(packedUsn);
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            recordOut.writeDouble(values[field]);
+        }
+        recordOut.writeLong(stringBytes);
+        recordOut.writeInt(length);
+        stringBytes += length;
+        rowCount++;
+    }
+
+    private void writeMissingRecord() throws IOException {
+        recordOut.write(new byte[RECORD_BYTES]);
+        rowCount++;
+    }
+
+    // Closes the load streams and maps the page file; the store is read/write from here on
+    public void finishLoading() throws IOException {
+        recordOut.close();
+        stringOut.close();
+        recordOut = null;
+        stringOut = null;
+
+        pageAccess = new RandomAccessFile(pageFile, "rw");
+        pageChannel = pageAccess.getChannel();
+        stringAccess = new RandomAccessFile(stringFile, "r");
+        segments = new MappedByteBuffer[rowCount / SEGMENT_ROWS + 1];
+        Log.d(TAG, "Spilled " + rowCount + " rows to " + pageFile.getName()
+                + ", keeping up to " + maxResidentPages + " pages on heap");
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public boolean isPresent(int rowIndex) {
+        if (rowIndex < 1 || rowIndex > rowCount) {
+            return false;
+        }
+        Page page = residentPages.get(rowIndex / PAGE_ROWS);
+        if (page != null) {
+            return page.names[rowIndex % PAGE_ROWS] != null;
+        }
+        return (record(rowIndex).getInt(recordPosition(rowIndex)) & FLAG_PRESENT) != 0;
+    }
+
+    // Reads only the record flags, so ranking scans do not page rows in
+    public boolean hasUsn(int rowIndex) {
+        return rowIndex >= 1 && rowIndex <= rowCount
+                && (record(rowIndex).getInt(recordPosition(rowIndex)) & FLAG_HAS_USN) != 0;
+    }
+
+    public StudentData getStudentData(int rowIndex) {
+        if (!isPresent(rowIndex)) {
+            return null;
+        }
+        Page page = page(rowIndex / PAGE_ROWS);
+        int slot = rowIndex % PAGE_ROWS;
+        int base = slot * FIELD_COUNT;
+        return new StudentData(page.names[slot], page.usnAt(slot),
+                orZero(page.values[base + RowDelta.FIELD_EXAM1]),
+                orZero(page.values[base + RowDelta.FIELD_EXAM2]),
+                orZero(page.values[base + RowDelta.FIELD_EXAM3]),
+                orZero(page.values[base + RowDelta.FIELD_AAT]));
+    }
+
+    public String getUsn(int rowIndex) {
+        Page page = page(rowIndex / PAGE_ROWS);
+        String usn = page.usnAt(rowIndex % PAGE_ROWS);
+        return usn != null ? usn : "";
+    }
+
+    // Reads through to the mapping for pages that are not resident, so scans do not churn the cache
+    public double getValue(int rowIndex, int field) {
+        Page page = residentPages.get(rowIndex / PAGE_ROWS);
+        if (page != null) {
+            return page.values[(rowIndex % PAGE_ROWS) * FIELD_COUNT + field];
+        }
+        return record(rowIndex).getDouble(recordPosition(rowIndex) + FIELDS_OFFSET + field * 8);
+    }
+
+    public void setValue(int rowIndex, int field, double value) {
+        Page page = page(rowIndex / PAGE_ROWS);
+        page.values[(rowIndex % PAGE_ROWS) * FIELD_COUNT + field] = value;
+        page.dirty = true;
+    }
+
+    public int getResidentPageCount() {
+        return residentPages.size();
+    }
+
+    public void close() {
+        residentPages.clear();
+        segments = null;
+        closeQuietly(recordOut);
+        closeQuietly(stringOut);
+        closeQuietly(pageAccess);
+        closeQuietly(stringAccess);
+        if (!pageFile.delete() || !stringFile.delete()) {
+            Log.w(TAG, "Could not delete spill files in " + pageFile.getParent());
+        }
+    }
+
+    private Page page(int pageIndex) {
+        Page page = residentPages.get(pageIndex);
+        if (page == null) {
+            page = readPage(pageIndex);
+            residentPages.put(pageIndex, page);
+            evictPages(page);
+        }
+        return page;
+    }
+
+    // Clean pages go first; dirty ones are only written back once nothing else is left
+    private void evictPages(Page requested) {
+        Iterator<Map.Entry<Integer, Page>> iterator = residentPages.entrySet().iterator();
+        while (residentPages.size() > maxResidentPages && iterator.hasNext()) {
+            Page page = iterator.next().getValue();
+            if (page != requested && !page.dirty) {
+                iterator.remove();
+            }
+        }
+        iterator = residentPages.entrySet().iterator();
+        while (residentPages.size() > maxResidentPages && iterator.hasNext()) {
+            Page page = iterator.next().getValue();
+            if (page != requested) {
+                writeBack(page);
+                iterator.remove();
+            }
+        }
+    }
+
+    private Page readPage(int pageIndex) {
+        Page page = new Page(pageIndex);
+        int firstRow = pageIndex * PAGE_ROWS;
+        int lastRow = Math.min(firstRow + PAGE_ROWS - 1, rowCount);
+        long stringStart = -1;
+        long stringEnd = 0;
+        for (int rowIndex = firstRow; rowIndex <= lastRow; rowIndex++) {
+            ByteBuffer buffer = record(rowIndex);
+            int position = recordPosition(rowIndex);
+            int slot = rowIndex - firstRow;
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                page.values[slot * FIELD_COUNT + field] =
+                        buffer.getDouble(position + FIELDS_OFFSET + field * 8);
+            }
+            page.packedUsns[slot] = buffer.getLong(position + 4);
+            if ((buffer.getInt(position) & FLAG_PRESENT) != 0) {
+                long offset = buffer.getLong(position + STRING_OFFSET);
+                if (stringStart < 0) {
+                    stringStart = offset;
+                }
+                stringEnd = offset + buffer.getInt(position + STRING_OFFSET + 8);
+            }
+        }
+        if (stringStart >= 0) {
+            readStrings(page, firstRow, lastRow, stringStart, stringEnd);
+        }
+        return page;
+    }
+
+    // A page's strings were appended together, so one read covers all of them
+    private void readStrings(Page page, int firstRow, int lastRow, long start, long end) {
+        try {
+            byte[] bytes = new byte[(int) (end - start)];
+            stringAccess.seek(start);
+            stringAccess.readFully(bytes);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            for (int rowIndex = firstRow; rowIndex <= lastRow; rowIndex++) {
+                ByteBuffer buffer = record(rowIndex);
+                int position = recordPosition(rowIndex);
+                if ((buffer.getInt(position) & FLAG_PRESENT) == 0) {
+                    continue;
+                }
+                int slot = rowIndex - firstRow;
+                page.names[slot] = readString(in);
+                page.rawUsns[slot] = readString(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read spilled rows", e);
+        }
+    }
+
+    // writeUTF is capped at 65535 bytes, which a pasted cell can exceed
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeBack(Page page) {
+        if (!page.dirty) {
+            return;
+        }
+        int firstRow = page.index * PAGE_ROWS;
+        int lastRow = Math.min(firstRow + PAGE_ROWS - 1, rowCount);
+        for (int rowIndex = firstRow; rowIndex <= lastRow; rowIndex++) {
+            ByteBuffer buffer = record(rowIndex);
+            int position = recordPosition(rowIndex);
+            int slot = rowIndex - firstRow;
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                buffer.putDouble(position + FIELDS_OFFSET + field * 8, page.values[slot * FIELD_COUNT + field]);
+            }
+        }
+        page.dirty = false;
+    }
+
+    private MappedByteBuffer record(int rowIndex) {
+        int segmentIndex = rowIndex / SEGMENT_ROWS;
+        MappedByteBuffer segment = segments[segmentIndex];
+        if (segment == null) {
+            long start = (long) segmentIndex * SEGMENT_ROWS * RECORD_BYTES;
+            long size = Math.min((long) SEGMENT_ROWS * RECORD_BYTES, (rowCount + 1L) * RECORD_BYTES - start);
+            try {
+                segment = pageChannel.map(FileChannel.MapMode.READ_WRITE, start, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not map page file", e);
+            }
+            segments[segmentIndex] = segment;
+        }
+        return segment;
+    }
+
+    private static int recordPosition(int rowIndex) {
+        return (rowIndex % SEGMENT_ROWS) * RECORD_BYTES;
+    }
+
+    private static double orZero(double value) {
+        return Double.isNaN(value) ? 0.0 : value;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing spill file: " + e.getMessage());
+        }
+    }
+
+    private static final class Page {
+        final int index;
+        final double[] values = new double[PAGE_ROWS * FIELD_COUNT];
+        final long[] packedUsns = new long[PAGE_ROWS];
+        final String[] names = new String[PAGE_ROWS];
+        final String[] rawUsns = new String[PAGE_ROWS];
+        boolean dirty;
+
+        Page(int index) {
+            this.index = index;
+        }
+
+        String usnAt(int slot) {
+            if (names[slot] == null) {
+                return null;
+            }
+            return packedUsns[slot] != UsnCodec.NOT_PACKED ? UsnCodec.unpack(packedUsns[slot]) : rawUsns[slot];
+        }
+    }
+}
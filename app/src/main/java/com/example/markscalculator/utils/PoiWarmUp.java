@@ -0,0 +1,59 @@
+package com.example.markscalculator.utils;
+
+import android.os.Process;
+import android.util.Log;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads and initialises POI, XMLBeans and the XML parser factories while the
+ * user is still picking a file, by writing and reading back a one-row
+ * workbook on a background-priority thread.
+ */
+public final class PoiWarmUp {
+    private static final String TAG = "PoiWarmUp";
+    private static final AtomicBoolean started = new AtomicBoolean();
+
+    private PoiWarmUp() {
+    }
+
+    public static void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(PoiWarmUp::warmUp, "mc-poi-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void warmUp() {
+        // Background rather than lowest: the first load may block on class init this thread holds
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        StartupTimings.recordWarmUpStart();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+                Row row = workbook.createSheet().createRow(0);
+                row.createCell(0).setCellValue("warm-up");
+                row.createCell(1).setCellValue(1.0);
+                workbook.write(bytes);
+            }
+
+            // Covers both read paths: the full workbook and the SAX row reader used for large files
+            try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(bytes.toByteArray()))) {
+                workbook.getSheetAt(0).getRow(0).getCell(1).getNumericCellValue();
+            }
+            XlsxRowReader.read(new ByteArrayInputStream(bytes.toByteArray()), 2, (rowIndex, cells) -> {
+            });
+        } catch (Exception | LinkageError e) {
+            // The real load will surface any problem; the warm-up is only an optimisation
+            Log.w(TAG, "POI warm-up failed: " + e.getMessage());
+        }
+        StartupTimings.recordWarmUpEnd();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.markscalculator.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class rank by final marks, kept current as marks change.
+ * Scores are bucketed to hundredths and counted in a Fenwick tree, so both
+ * updating a student and asking for a rank are O(log buckets). Each bucket
+ * also links its rows, so the top k rows are read without visiting the rest.
+ */
+public class RankIndex {
+    private static final int SCALE = 100;
+    private static final int NOT_RANKED = -1;
+    private static final int NO_ROW = -1;
+
+    private final int bucketCount;
+    private final int[] tree;
+    // Bucket per row, NOT_RANKED for rows without a score
+    private int[] rowBuckets;
+    // Doubly linked list of the rows in each bucket, NO_ROW terminated
+    private final int[] bucketHeads;
+    private int[] nextInBucket;
+    private int[] previousInBucket;
+    private int size = 0;
+
+    public RankIndex(double maxScore, int rowCapacity) {
+        bucketCount = (int) Math.round(maxScore * SCALE) + 1;
+        tree = new int[bucketCount + 1];
+        bucketHeads = new int[bucketCount];
+        Arrays.fill(bucketHeads, NO_ROW);
+        rowBuckets = new int[Math.max(rowCapacity, 1) + 1];
+        Arrays.fill(rowBuckets, NOT_RANKED);
+        nextInBucket = new int[rowBuckets.length];
+        previousInBucket = new int[rowBuckets.length];
+    }
+
+    public synchronized void update(int row, double score) {
+        ensureCapacity(row);
+        int bucket = toBucket(score);
+        int previous = rowBuckets[row];
+        if (previous == bucket) {
+            return;
+        }
+        if (previous != NOT_RANKED) {
+            add(previous, -1);
+            unlink(row, previous);
+        } else {
+            size++;
+        }
+        add(bucket, 1);
+        link(row, bucket);
+        rowBuckets[row] = bucket;
+    }
+
+    public synchronized void remove(int row) {
+        if (row >= rowBuckets.length || rowBuckets[row] == NOT_RANKED) {
+            return;
+        }
+        add(rowBuckets[row], -1);
+        unlink(row, rowBuckets[row]);
+        rowBuckets[row] = NOT_RANKED;
+        size--;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /** 1-based competition rank (ties share a rank), or -1 if the row is not ranked. */
+    public synchronized int getRank(int row) {
+        if (row >= rowBuckets.length || rowBuckets[row] == NOT_RANKED) {
+            return NOT_RANKED;
+        }
+        return size - prefixCount(rowBuckets[row]) + 1;
+    }
+
+    /** Share of the class scoring at or below this row, 0-100, or -1 if the row is not ranked. */
+    public synchronized double getPercentile(int row) {
+        if (row >= rowBuckets.length || rowBuckets[row] == NOT_RANKED) {
+            return NOT_RANKED;
+        }
+        return prefixCount(rowBuckets[row]) * 100.0 / size;
+    }
+
+    /** Rows of the k best scores, best first. O(k + occupied buckets visited * log buckets). */
+    public synchronized List<Integer> getTopRows(int k) {
+        int count = Math.min(Math.max(k, 0), size);
+        List<Integer> top = new ArrayList<>(count);
+        while (top.size() < count) {
+            // The next occupied bucket below the ones already taken
+            int bucket = findBucketWithCountAbove(top.size() + 1);
+            for (int row = bucketHeads[bucket]; row != NO_ROW && top.size() < count; row = nextInBucket[row]) {
+                top.add(row);
+            }
+        }
+        return top;
+    }
+
+    // Lowest bucket such that at least k rows score in it or above
+    private int findBucketWithCountAbove(int k) {
+        int target = size - k; // rows strictly below the threshold bucket
+        int position = 0;
+        int remaining = target;
+        for (int step = Integer.highestOneBit(bucketCount); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= bucketCount && tree[next] <= remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        return position; // 0-based bucket index of the (target + 1)-th lowest score
+    }
+
+    private int toBucket(double score) {
+        int bucket = (int) Math.round(score * SCALE);
+        return Math.max(0, Math.min(bucket, bucketCount - 1));
+    }
+
+    private void ensureCapacity(int row) {
+        if (row < rowBuckets.length) {
+            return;
+        }
+        int oldLength = rowBuckets.length;
+        rowBuckets = Arrays.copyOf(rowBuckets, Math.max(row + 1, oldLength * 2));
+        Arrays.fill(rowBuckets, oldLength, rowBuckets.length, NOT_RANKED);
+        nextInBucket = Arrays.copyOf(nextInBucket, rowBuckets.length);
+        previousInBucket = Arrays.copyOf(previousInBucket, rowBuckets.length);
+    }
+
+    private void link(int row, int bucket) {
+        int head = bucketHeads[bucket];
+        nextInBucket[row] = head;
+        previousInBucket[row] = NO_ROW;
+        if (head != NO_ROW) {
+            previousInBucket[head] = row;
+        }
+        bucketHeads[bucket] = row;
+    }
+
+    private void unlink(int row, int bucket) {
+        int next = nextInBucket[row];
+        int previous = previousInBucket[row];
+        if (previous != NO_ROW) {
+            nextInBucket[previous] = next;
+        } else {
+            bucketHeads[bucket] = next;
+        }
+        if (next != NO_ROW) {
+            previousInBucket[next] = previous;
+        }
+    }
+
+    private void add(int bucket, int delta) {
+        for (int i = bucket + 1; i <= bucketCount; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // Rows scoring in buckets 0..bucket inclusive
+    private int prefixCount(int bucket) {
+        int count = 0;
+        for (int i = bucket + 1; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+}
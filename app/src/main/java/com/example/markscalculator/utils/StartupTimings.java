@@ -0,0 +1,65 @@
+package com.example.markscalculator.utils;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Logs cold-start milestones under the "StartupTimings" tag, plus how the
+ * first workbook load lined up with the POI warm-up: how long after the
+ * warm-up it started, or for how long the two ran at the same time.
+ */
+public final class StartupTimings {
+    private static final String TAG = "StartupTimings";
+    private static final long NOT_SET = Long.MIN_VALUE;
+    private static final AtomicBoolean firstLoadRecorded = new AtomicBoolean();
+    // System.nanoTime() values
+    private static volatile long warmUpStartNanos = NOT_SET;
+    private static volatile long warmUpEndNanos = NOT_SET;
+
+    private StartupTimings() {
+    }
+
+    public static void mark(String milestone) {
+        long sinceStart = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+        Log.i(TAG, milestone + " at " + sinceStart + " ms after process start");
+    }
+
+    public static void recordWarmUpStart() {
+        warmUpStartNanos = System.nanoTime();
+    }
+
+    public static void recordWarmUpEnd() {
+        long end = System.nanoTime();
+        warmUpEndNanos = end;
+        Log.i(TAG, "POI warm-up ran " + toMillis(end - warmUpStartNanos) + " ms off the main thread");
+    }
+
+    // Only the first load in the process pays for class loading, so later ones are not logged
+    public static void recordWorkbookLoad(long startNanos) {
+        long end = System.nanoTime();
+        if (!firstLoadRecorded.compareAndSet(false, true)) {
+            return;
+        }
+        long loadMillis = toMillis(end - startNanos);
+        long warmUpStart = warmUpStartNanos;
+        long warmUpEnd = warmUpEndNanos;
+        if (warmUpStart == NOT_SET || warmUpStart >= end) {
+            Log.i(TAG, "First workbook load took " + loadMillis + " ms without a warm-up");
+        } else if (warmUpEnd != NOT_SET && warmUpEnd <= startNanos) {
+            Log.i(TAG, "First workbook load took " + loadMillis + " ms, starting "
+                    + toMillis(startNanos - warmUpEnd) + " ms after the warm-up finished");
+        } else {
+            boolean stillRunning = warmUpEnd == NOT_SET || warmUpEnd > end;
+            long overlap = (stillRunning ? end : warmUpEnd) - Math.max(warmUpStart, startNanos);
+            Log.i(TAG, "First workbook load took " + loadMillis + " ms and ran alongside the warm-up for "
+                    + toMillis(overlap) + " ms" + (stillRunning ? ", which was still running" : ""));
+        }
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.markscalculator.utils;
+
+import com.example.markscalculator.models.RowDelta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Pushes changed rows to the college system in gzip-compressed batches.
+ * <p>
+ * Protocol: each batch is a POST of a {@link DeltaCodec} payload with
+ * {@code Content-Encoding: gzip} and the tracker's session id in
+ * {@value #SESSION_HEADER}. The server answers 200 with the highest version it
+ * has applied. That version is saved after every batch, so a push that fails
+ * part way continues from the first unacknowledged row on the next call.
+ */
+public class SyncClient {
+    public static final String SESSION_HEADER = "X-Sync-Session";
+    private static final int DEFAULT_BATCH_SIZE = 200;
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_RETRY_DELAY_MS = 1000;
+    private static final int TIMEOUT_MS = 15000;
+
+    public interface SyncStateStore {
+        String getSessionId();
+
+        long getAcknowledgedVersion();
+
+        void save(String sessionId, long acknowledgedVersion) throws IOException;
+    }
+
+    private final URL endpoint;
+    private final SyncStateStore state;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long retryDelayMs = DEFAULT_RETRY_DELAY_MS;
+    private long lastPushBytes = 0;
+
+    public SyncClient(URL endpoint, SyncStateStore state) {
+        this.endpoint = endpoint;
+        this.state = state;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void setRetryPolicy(int maxAttempts, long retryDelayMs) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryDelayMs = Math.max(0, retryDelayMs);
+    }
+
+    /** Compressed bytes sent by the most recent {@link #push} call. */
+    public long getLastPushBytes() {
+        return lastPushBytes;
+    }
+
+    /**
+     * Sends every change the server has not acknowledged yet.
+     *
+     * @return the acknowledged version after the push
+     * @throws IOException if a batch still fails after all retries; batches
+     *                     sent before it stay acknowledged
+     */
+    public long push(ChangeTracker tracker) throws IOException {
+        lastPushBytes = 0;
+        String sessionId = tracker.getSessionId();
+        long acknowledged = sessionId.equals(state.getSessionId()) ? state.getAcknowledgedVersion() : 0;
+
+        List<RowDelta> pending = tracker.deltasSince(acknowledged);
+        for (int start = 0; start < pending.size(); start += batchSize) {
+            List<RowDelta> batch = pending.subList(start, Math.min(start + batchSize, pending.size()));
+            long batchVersion = batch.get(batch.size() - 1).getVersion();
+            byte[] body = compress(DeltaCodec.encode(batch));
+
+            long serverVersion = sendWithRetry(sessionId, body);
+            if (serverVersion < batchVersion) {
+                throw new IOException("Server acknowledged version " + serverVersion
+                        + " but batch ended at " + batchVersion);
+            }
+            lastPushBytes += body.length;
+            acknowledged = batchVersion;
+            state.save(sessionId, acknowledged);
+        }
+        return acknowledged;
+    }
+
+    private long sendWithRetry(String sessionId, byte[] body) throws IOException {
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                return send(sessionId, body);
+            } catch (IOException e) {
+                lastError = e;
+                if (attempt < maxAttempts && retryDelayMs > 0) {
+                    try {
+                        Thread.sleep(retryDelayMs * attempt);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Sync interrupted", interrupted);
+                    }
+                }
+            }
+        }
+        throw lastError;
+    }
+
+    private long send(String sessionId, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(TIMEOUT_MS);
+            connection.setReadTimeout(TIMEOUT_MS);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/octet-stream");
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            connection.setRequestProperty(SESSION_HEADER, sessionId);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Sync server returned HTTP " + status);
+            }
+            try (InputStream in = connection.getInputStream()) {
+                String response = new String(readAll(in), StandardCharsets.UTF_8).trim();
+                return Long.parseLong(response);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid acknowledgement from sync server", e);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static byte[] compress(byte[] payload) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(payload.length / 2 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+            gzip.write(payload);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+
+    /** Keeps the acknowledged version in a small properties file. */
+    public static class FileSyncStateStore implements SyncStateStore {
+        private static final String KEY_SESSION = "session";
+        private static final String KEY_VERSION = "acknowledgedVersion";
+
+        private final File file;
+        private String sessionId;
+        private long acknowledgedVersion;
+
+        public FileSyncStateStore(File file) throws IOException {
+            this.file = file;
+            if (file.exists()) {
+                Properties properties = new Properties();
+                try (FileInputStream in = new FileInputStream(file)) {
+                    properties.load(in);
+                }
+                sessionId = properties.getProperty(KEY_SESSION);
+                acknowledgedVersion = Long.parseLong(properties.getProperty(KEY_VERSION, "0"));
+            }
+        }
+
+        @Override
+        public synchronized String getSessionId() {
+            return sessionId;
+        }
+
+        @Override
+        public synchronized long getAcknowledgedVersion() {
+            return acknowledgedVersion;
+        }
+
+        @Override
+        public synchronized void save(String sessionId, long acknowledgedVersion) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty(KEY_SESSION, sessionId);
+            properties.setProperty(KEY_VERSION, String.valueOf(acknowledgedVersion));
+            File temp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                properties.store(out, null);
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not save sync state to " + file);
+            }
+            this.sessionId = sessionId;
+            this.acknowledgedVersion = acknowledgedVersion;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.markscalculator.utils;
+
+/**
+ * Packs VTU style USNs (e.g. 1RV21CS001) into a single long.
+ * Layout, most significant first: region digit, college code, year, branch code, roll number.
+ * Packed values sort in the same order as the original strings.
+ */
+public final class UsnCodec {
+    public static final long NOT_PACKED = -1L;
+    private static final int USN_LENGTH = 10;
+
+    private UsnCodec() {
+    }
+
+    public static long pack(String usn) {
+        if (usn == null || usn.length() != USN_LENGTH) {
+            return NOT_PACKED;
+        }
+        int region = digit(usn.charAt(0));
+        int college1 = letter(usn.charAt(1));
+        int college2 = letter(usn.charAt(2));
+        int year = twoDigits(usn.charAt(3), usn.charAt(4));
+        int branch1 = letter(usn.charAt(5));
+        int branch2 = letter(usn.charAt(6));
+        int roll = threeDigits(usn.charAt(7), usn.charAt(8), usn.charAt(9));
+        if ((region | college1 | college2 | year | branch1 | branch2 | roll) < 0) {
+            return NOT_PACKED;
+        }
+
+        long packed = region;
+        packed = (packed << 5) | college1;
+        packed = (packed << 5) | college2;
+        packed = (packed << 7) | year;
+        packed = (packed << 5) | branch1;
+        packed = (packed << 5) | branch2;
+        packed = (packed << 10) | roll;
+        return packed;
+    }
+
+    public static String unpack(long packed) {
+        if (packed < 0) {
+            throw new IllegalArgumentException("Not a packed USN: " + packed);
+        }
+        int roll = (int) (packed & 0x3FF);
+        int branch2 = (int) ((packed >>> 10) & 0x1F);
+        int branch1 = (int) ((packed >>> 15) & 0x1F);
+        int year = (int) ((packed >>> 20) & 0x7F);
+        int college2 = (int) ((packed >>> 27) & 0x1F);
+        int college1 = (int) ((packed >>> 32) & 0x1F);
+        int region = (int) ((packed >>> 37) & 0xF);
+
+        char[] chars = new char[USN_LENGTH];
+        chars[0] = (char) ('0' + region);
+        chars[1] = (char) ('A' + college1);
+        chars[2] = (char) ('A' + college2);
+        chars[3] = (char) ('0' + year / 10);
+        chars[4] = (char) ('0' + year % 10);
+        chars[5] = (char) ('A' + branch1);
+        chars[6] = (char) ('A' + branch2);
+        chars[7] = (char) ('0' + roll / 100);
+        chars[8] = (char) ('0' + (roll / 10) % 10);
+        chars[9] = (char) ('0' + roll % 10);
+        return new String(chars);
+    }
+
+    private static int digit(char c) {
+        return c >= '0' && c <= '9' ? c - '0' : -1;
+    }
+
+    // Only upper case is packed so that unpack() gives back exactly what was read
+    private static int letter(char c) {
+        return c >= 'A' && c <= 'Z' ? c - 'A' : -1;
+    }
+
+    private static int twoDigits(char tens, char ones) {
+        int t = digit(tens);
+        int o = digit(ones);
+        return (t | o) < 0 ? -1 : t * 10 + o;
+    }
+
+    private static int threeDigits(char hundreds, char tens, char ones) {
+        int h = digit(hundreds);
+        int rest = twoDigits(tens, ones);
+        return (h | rest) < 0 ? -1 : h * 100 + rest;
+    }
+}
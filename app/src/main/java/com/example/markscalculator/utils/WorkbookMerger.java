@@ -0,0 +1,376 @@
+package com.example.markscalculator.utils;
+
+import android.util.Log;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Merges copies of the same class sheet filled in by different teachers.
+ * Sources are streamed concurrently (no XSSFWorkbook per source) into a single
+ * columnar table hash-joined on USN, conflicts are resolved per cell with a
+ * {@link ConflictPolicy}, and one consolidated sheet is written with the
+ * derived columns recomputed.
+ */
+public class WorkbookMerger {
+    private static final String TAG = "WorkbookMerger";
+    private static final int NAME_COLUMN = 0;
+    private static final int USN_COLUMN = 1;
+    private static final int FIRST_MARK_COLUMN = 2;
+    private static final int MARK_COLUMNS = 4; // Exam1, Exam2, Exam3, AAT
+    private static final int MAX_SOURCES = Byte.MAX_VALUE;
+
+    public enum ConflictPolicy {
+        /** The value from the most recent source wins. */
+        LATEST,
+        /** A non-zero value beats zero; among non-zero values the most recent wins. */
+        NON_ZERO,
+        /** The highest value wins. */
+        MAX
+    }
+
+    public static class MergeSource {
+        private final String label;
+        private final DocumentStreams streams;
+        private final boolean csv;
+
+        public MergeSource(String label, DocumentStreams streams, boolean csv) {
+            this.label = label;
+            this.streams = streams;
+            this.csv = csv;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public static class MergeResult {
+        private final int students;
+        private final int conflicts;
+
+        MergeResult(int students, int conflicts) {
+            this.students = students;
+            this.conflicts = conflicts;
+        }
+
+        public int getStudents() {
+            return students;
+        }
+
+        public int getConflicts() {
+            return conflicts;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final ConflictPolicy policy;
+
+    public WorkbookMerger(ExecutorService executor, ConflictPolicy policy) {
+        this.executor = executor;
+        this.policy = policy;
+    }
+
+    /**
+     * @param sources oldest first; later sources count as more recent for
+     *                {@link ConflictPolicy#LATEST} and {@link ConflictPolicy#NON_ZERO}
+     */
+    public MergeResult merge(List<MergeSource> sources, DocumentStreams output) throws IOException {
+        if (sources.size() > MAX_SOURCES) {
+            throw new IllegalArgumentException("Cannot merge more than " + MAX_SOURCES + " files");
+        }
+        ClassTable table = new ClassTable(policy);
+
+        List<Future<?>> loads = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            MergeSource source = sources.get(i);
+            int rank = i;
+            loads.add(executor.submit(() -> {
+                readSource(source, rank, table);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> load : loads) {
+                load.get();
+            }
+        } catch (ExecutionException e) {
+            for (Future<?> load : loads) {
+                load.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause
+                    : new IOException("Error reading source: " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Merge interrupted", e);
+        }
+
+        writeConsolidated(table, output);
+        Log.d(TAG, "Merged " + sources.size() + " files into " + table.size() +
+                " students, " + table.conflicts + " conflicting cells");
+        return new MergeResult(table.size(), table.conflicts);
+    }
+
+    private void readSource(MergeSource source, int rank, ClassTable table) throws IOException {
+        try (InputStream in = source.streams.openInputStream()) {
+            if (source.csv) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line = reader.readLine(); // Header
+                double[] marks = new double[MARK_COLUMNS];
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = CsvHandler.parseCsvLine(line);
+                    // CSV class files carry no AAT column
+                    String[] cells = Arrays.copyOf(fields, FIRST_MARK_COLUMN + MARK_COLUMNS);
+                    cells[FIRST_MARK_COLUMN + MARK_COLUMNS - 1] = null;
+                    addRow(cells, rank, table, marks);
+                }
+            } else {
+                double[] marks = new double[MARK_COLUMNS];
+                XlsxRowReader.read(in, FIRST_MARK_COLUMN + MARK_COLUMNS, (rowIndex, cells) -> {
+                    if (rowIndex > 0) {
+                        addRow(cells, rank, table, marks);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void addRow(String[] cells, int rank, ClassTable table, double[] marks) {
+        String usn = cells[USN_COLUMN] != null ? cells[USN_COLUMN].trim() : "";
+        if (usn.isEmpty()) {
+            return;
+        }
+        int presentMask = 0;
+        for (int column = 0; column < MARK_COLUMNS; column++) {
+            String cell = cells[FIRST_MARK_COLUMN + column];
+            if (cell == null || cell.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                marks[column] = Double.parseDouble(cell.trim());
+                presentMask |= 1 << column;
+            } catch (NumberFormatException e) {
+                // Treated like a blank cell so it cannot override another teacher's value
+            }
+        }
+        String name = cells[NAME_COLUMN] != null ? cells[NAME_COLUMN].trim() : "";
+        table.merge(usn, name, marks, presentMask, (byte) rank);
+    }
+
+    private void writeConsolidated(ClassTable table, DocumentStreams output) throws IOException {
+        Integer[] order = new Integer[table.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, table::compareUsn);
+
+        // close() also deletes the temp files backing the streamed rows
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+             OutputStream out = output.openOutputStream()) {
+            Sheet sheet = workbook.createSheet("Merged");
+            String[] titles = {"Name", "USN", "Exam1", "Exam2", "Exam3", "AAT",
+                    "Total", "Average", "Final Marks"};
+            Row header = sheet.createRow(0);
+            for (int column = 0; column < titles.length; column++) {
+                header.createCell(column).setCellValue(titles[column]);
+            }
+
+            int rowIndex = 1;
+            for (int student : order) {
+                Row row = sheet.createRow(rowIndex++);
+                row.createCell(NAME_COLUMN).setCellValue(table.names[student]);
+                row.createCell(USN_COLUMN).setCellValue(table.usnAt(student));
+                double[] marks = new double[MARK_COLUMNS];
+                for (int column = 0; column < MARK_COLUMNS; column++) {
+                    if (table.ranks[column][student] >= 0) {
+                        marks[column] = table.values[column][student];
+                        row.createCell(FIRST_MARK_COLUMN + column).setCellValue(marks[column]);
+                    }
+                }
+                double total = MarksScheme.total(marks[0], marks[1], marks[2]);
+                double average = MarksScheme.average(total);
+                row.createCell(6).setCellValue(total);
+                row.createCell(7).setCellValue(average);
+                row.createCell(8).setCellValue(MarksScheme.finalMarks(average, marks[3]));
+            }
+            workbook.write(out);
+        }
+    }
+
+    /**
+     * One columnar copy of the class. Packed USNs are joined through an
+     * open-addressing long table; anything the codec rejects falls back to a
+     * HashMap. Each mark cell remembers which source set it (-1 = none yet).
+     */
+    private static class ClassTable {
+        private final ConflictPolicy policy;
+        private final Map<String, Integer> rawIndex = new HashMap<>();
+        private long[] slotKeys = new long[1024];
+        private int[] slotValues = new int[1024];
+        private int size = 0;
+        int conflicts = 0;
+
+        long[] packedUsns = new long[256];
+        String[] rawUsns = new String[256];
+        String[] names = new String[256];
+        double[][] values = new double[MARK_COLUMNS][256];
+        byte[][] ranks = new byte[MARK_COLUMNS][256];
+
+        ClassTable(ConflictPolicy policy) {
+            this.policy = policy;
+            Arrays.fill(slotKeys, UsnCodec.NOT_PACKED);
+            for (byte[] columnRanks : ranks) {
+                Arrays.fill(columnRanks, (byte) -1);
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void merge(String usn, String name, double[] marks, int presentMask, byte rank) {
+            int student = indexFor(usn);
+            if (names[student] == null || (names[student].isEmpty() && !name.isEmpty())) {
+                names[student] = name;
+            }
+            for (int column = 0; column < MARK_COLUMNS; column++) {
+                if ((presentMask & (1 << column)) != 0) {
+                    offer(column, student, marks[column], rank);
+                }
+            }
+        }
+
+        private void offer(int column, int student, double value, byte rank) {
+            byte currentRank = ranks[column][student];
+            if (currentRank < 0) {
+                values[column][student] = value;
+                ranks[column][student] = rank;
+                return;
+            }
+            double current = values[column][student];
+            if (Double.compare(current, value) != 0) {
+                conflicts++;
+            }
+            boolean newer = rank > currentRank;
+            boolean take;
+            switch (policy) {
+                case MAX:
+                    take = value > current || (value == current && newer);
+                    break;
+                case NON_ZERO:
+                    take = (current == 0 && value != 0) || ((current == 0) == (value == 0) && newer);
+                    break;
+                case LATEST:
+                default:
+                    take = newer;
+                    break;
+            }
+            if (take) {
+                values[column][student] = value;
+                ranks[column][student] = rank;
+            }
+        }
+
+        private int indexFor(String usn) {
+            long packed = UsnCodec.pack(usn);
+            if (packed == UsnCodec.NOT_PACKED) {
+                Integer existing = rawIndex.get(usn);
+                if (existing != null) {
+                    return existing;
+                }
+                int student = append(packed, usn);
+                rawIndex.put(usn, student);
+                return student;
+            }
+
+            int mask = slotKeys.length - 1;
+            int slot = mix(packed) & mask;
+            while (slotKeys[slot] != UsnCodec.NOT_PACKED) {
+                if (slotKeys[slot] == packed) {
+                    return slotValues[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            int student = append(packed, null);
+            slotKeys[slot] = packed;
+            slotValues[slot] = student;
+            if (size * 2 > slotKeys.length) {
+                rehash();
+            }
+            return student;
+        }
+
+        private int append(long packed, String raw) {
+            if (size == names.length) {
+                int capacity = size * 2;
+                packedUsns = Arrays.copyOf(packedUsns, capacity);
+                rawUsns = Arrays.copyOf(rawUsns, capacity);
+                names = Arrays.copyOf(names, capacity);
+                for (int column = 0; column < MARK_COLUMNS; column++) {
+                    values[column] = Arrays.copyOf(values[column], capacity);
+                    ranks[column] = Arrays.copyOf(ranks[column], capacity);
+                    Arrays.fill(ranks[column], size, capacity, (byte) -1);
+                }
+            }
+            packedUsns[size] = packed;
+            rawUsns[size] = raw;
+            return size++;
+        }
+
+        private void rehash() {
+            long[] oldKeys = slotKeys;
+            int[] oldValues = slotValues;
+            slotKeys = new long[oldKeys.length * 2];
+            slotValues = new int[oldKeys.length * 2];
+            Arrays.fill(slotKeys, UsnCodec.NOT_PACKED);
+            int mask = slotKeys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == UsnCodec.NOT_PACKED) {
+                    continue;
+                }
+                int slot = mix(oldKeys[i]) & mask;
+                while (slotKeys[slot] != UsnCodec.NOT_PACKED) {
+                    slot = (slot + 1) & mask;
+                }
+                slotKeys[slot] = oldKeys[i];
+                slotValues[slot] = oldValues[i];
+            }
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        String usnAt(int student) {
+            return packedUsns[student] != UsnCodec.NOT_PACKED
+                    ? UsnCodec.unpack(packedUsns[student]) : rawUsns[student];
+        }
+
+        int compareUsn(int a, int b) {
+            long packedA = packedUsns[a];
+            long packedB = packedUsns[b];
+            if (packedA != UsnCodec.NOT_PACKED && packedB != UsnCodec.NOT_PACKED) {
+                return Long.compare(packedA, packedB);
+            }
+            return usnAt(a).compareTo(usnAt(b));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.markscalculator.utils;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Streams the rows of the first sheet of an XLSX file through SAX instead of
+ * building an XSSFWorkbook. The package is opened from a file so parts are
+ * inflated on demand, which keeps memory flat regardless of row count.
+ */
+public final class XlsxRowReader {
+
+    public interface RowHandler {
+        /**
+         * Called once per non-empty row. The cells array is reused between
+         * calls; missing cells are null and numbers arrive unformatted.
+         */
+        void onRow(int rowIndex, String[] cells) throws IOException;
+    }
+
+    private XlsxRowReader() {
+    }
+
+    // OPCPackage.open(InputStream) would inflate every part onto the heap, so spool to a temp file first
+    public static void read(InputStream in, int columns, RowHandler handler) throws IOException {
+        File spool = File.createTempFile("xlsx", ".spool");
+        try {
+            try (OutputStream out = new FileOutputStream(spool)) {
+                copy(in, out);
+            }
+            read(spool, columns, handler);
+        } finally {
+            if (!spool.delete()) {
+                spool.deleteOnExit();
+            }
+        }
+    }
+
+    public static void read(File file, int columns, RowHandler handler) throws IOException {
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(file, PackageAccess.READ);
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new IOException("Workbook has no sheets");
+            }
+
+            RowCollector collector = new RowCollector(columns, handler);
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(
+                    styles, strings, collector, new RawNumberFormatter(), false));
+            try (InputStream sheet = sheets.next()) {
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Could not read workbook: " + e.getMessage(), e);
+        } finally {
+            // A read-only package is released with revert(); close() would try to save it
+            if (pkg != null) {
+                pkg.revert();
+            }
+        }
+    }
+
+    static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    // Marks are parsed back to double, so skip number formats like "0" that would round them
+    private static class RawNumberFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            return Double.toString(value);
+        }
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString,
+                                            boolean use1904Windowing) {
+            return Double.toString(value);
+        }
+    }
+
+    private static class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final String[] cells;
+        private final RowHandler handler;
+        private int nextColumn;
+
+        RowCollector(int columns, RowHandler handler) {
+            this.cells = new String[columns];
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            Arrays.fill(cells, null);
+            nextColumn = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            try {
+                handler.onRow(rowNum, cells);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : nextColumn;
+            nextColumn = column + 1;
+            if (column < cells.length) {
+                cells[column] = formattedValue;
+            }
+        }
+    }
+}
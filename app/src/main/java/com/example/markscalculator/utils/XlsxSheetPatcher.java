@@ -0,0 +1,643 @@
+package com.example.markscalculator.utils;
+
+import com.example.markscalculator.models.RowDelta;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the edits held in a {@link PagedStudentStore} back into the XLSX the
+ * store was loaded from, without building a workbook. Every package entry is
+ * copied as is except the first sheet, whose XML is streamed through and only
+ * has the mark, rank and percentile cells that changed rewritten, so other
+ * sheets, styles, formulas and extra columns survive the save.
+ */
+final class XlsxSheetPatcher {
+    private static final String XML_DECLARATION =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final int FIRST_MARK_COLUMN = 2;
+
+    private XlsxSheetPatcher() {
+    }
+
+    static void patch(File source, File target, PagedStudentStore store, RankIndex ranks) throws IOException {
+        String sheetName;
+        ReadOnlySharedStringsTable strings;
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(source, PackageAccess.READ);
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) new XSSFReader(pkg).getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new IOException("Workbook has no sheets");
+            }
+            sheets.next().close();
+            sheetName = sheets.getSheetPart().getPartName().getName().substring(1);
+            strings = new ReadOnlySharedStringsTable(pkg);
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("Could not read workbook: " + e.getMessage(), e);
+        } finally {
+            if (pkg != null) {
+                pkg.revert();
+            }
+        }
+
+        try (ZipFile zip = new ZipFile(source);
+             ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(target)))) {
+            ZipEntry sheet = null;
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements() && sheet == null) {
+                ZipEntry entry = entries.nextElement();
+                // Part names are case-insensitive in OPC
+                if (entry.getName().equalsIgnoreCase(sheetName)) {
+                    sheet = entry;
+                }
+            }
+            if (sheet == null) {
+                throw new IOException("Workbook has no entry for " + sheetName);
+            }
+
+            HeaderReader header = new HeaderReader(strings);
+            try (InputStream in = zip.getInputStream(sheet)) {
+                parse(in, header);
+            } catch (StopParsing e) {
+                // Only the first row was needed
+            }
+            int[] rankColumns = ExcelHandler.resolveRankColumns(header.titles);
+
+            entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                ZipEntry copy = new ZipEntry(entry.getName());
+                copy.setTime(entry.getTime());
+                out.putNextEntry(copy);
+                try (InputStream in = zip.getInputStream(entry)) {
+                    if (entry.getName().equals(sheet.getName())) {
+                        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                        writer.write(XML_DECLARATION);
+                        parse(in, new SheetRewriter(writer, strings, store, ranks, rankColumns));
+                        writer.flush();
+                    } else {
+                        XlsxRowReader.copy(in, out);
+                    }
+                }
+                out.closeEntry();
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (SAXException e) {
+            throw new IOException("Could not rewrite sheet: " + e.getMessage(), e);
+        }
+    }
+
+    // Without namespace processing, prefixes and xmlns attributes come through as written
+    private static void parse(InputStream in, DefaultHandler handler) throws IOException, SAXException {
+        try {
+            SAXParserFactory factory = XMLHelper.getSaxParserFactory();
+            factory.setNamespaceAware(false);
+            XMLReader parser = factory.newSAXParser().getXMLReader();
+            parser.setContentHandler(handler);
+            parser.parse(new InputSource(in));
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Could not create XML parser", e);
+        }
+    }
+
+    private static String localName(String qName) {
+        int colon = qName.indexOf(':');
+        return colon < 0 ? qName : qName.substring(colon + 1);
+    }
+
+    private static final class StopParsing extends SAXException {
+        private static final long serialVersionUID = 1L;
+
+        StopParsing() {
+            super("Stopped after the header row");
+        }
+    }
+
+    /** One {@code <c>} element: its attributes, echoed children and the parts needed to read its value. */
+    private static final class CellXml {
+        final List<String[]> attributes = new ArrayList<>();
+        final StringBuilder body = new StringBuilder();
+        final StringBuilder value = new StringBuilder();
+        final StringBuilder inlineText = new StringBuilder();
+        String formula;
+        String type;
+        int column;
+
+        String text(ReadOnlySharedStringsTable strings) {
+            if (type == null || type.equals("n") || type.equals("str") || type.equals("b")) {
+                return value.toString();
+            }
+            if (type.equals("s")) {
+                try {
+                    return strings.getItemAt(Integer.parseInt(value.toString().trim())).getString();
+                } catch (RuntimeException e) {
+                    return "";
+                }
+            }
+            return type.equals("inlineStr") ? inlineText.toString() : "";
+        }
+
+        // Mirrors what the loader stored: numbers, numeric text and cached formula results
+        double number(ReadOnlySharedStringsTable strings) {
+            if ("b".equals(type) || "e".equals(type) || "d".equals(type)) {
+                return Double.NaN;
+            }
+            return ExcelHandler.parseMark(text(strings));
+        }
+    }
+
+    /** Collects the header titles from the first row, then stops the parse. */
+    private static final class HeaderReader extends DefaultHandler {
+        private final ReadOnlySharedStringsTable strings;
+        private final StringBuilder ignored = new StringBuilder();
+        String[] titles;
+        private List<CellXml> cells;
+        private CellXml cell;
+        private StringBuilder text;
+        private int nextColumn;
+
+        HeaderReader(ReadOnlySharedStringsTable strings) {
+            this.strings = strings;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            String name = localName(qName);
+            if (name.equals("row")) {
+                String r = attributes.getValue("r");
+                // No header row when the sheet starts further down
+                cells = r == null || r.equals("1") ? new ArrayList<>() : null;
+            } else if (cells != null && name.equals("c")) {
+                cell = new CellXml();
+                String reference = attributes.getValue("r");
+                cell.column = reference != null ? new CellReference(reference).getCol() : nextColumn;
+                nextColumn = cell.column + 1;
+                cell.type = attributes.getValue("t");
+                cells.add(cell);
+            } else if (cell != null) {
+                text = name.equals("v") ? cell.value : name.equals("t") ? cell.inlineText : ignored;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            String name = localName(qName);
+            if (name.equals("c")) {
+                cell = null;
+            } else if (name.equals("row") || name.equals("sheetData")) {
+                if (cells != null) {
+                    int width = cells.isEmpty() ? 0 : cells.get(cells.size() - 1).column + 1;
+                    titles = new String[width];
+                    for (CellXml header : cells) {
+                        if (header.column < width) {
+                            titles[header.column] = header.text(strings);
+                        }
+                    }
+                }
+                throw new StopParsing();
+            }
+            text = null;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (text != null) {
+                text.append(ch, start, length);
+            }
+        }
+    }
+
+    /** Echoes the sheet XML, rewriting the changed cells of each buffered row. */
+    private static final class SheetRewriter extends DefaultHandler {
+        private final Writer writer;
+        private final ReadOnlySharedStringsTable strings;
+        private final PagedStudentStore store;
+        private final RankIndex ranks;
+        private final int[] rankColumns;
+
+        private final StringBuilder pending = new StringBuilder();
+        private boolean tagOpen;
+        private String prefix = "";
+
+        private List<String[]> rowAttributes;
+        private List<CellXml> rowCells;
+        private StringBuilder rowExtra;
+        private int rowIndex = -1;
+        private int nextColumn;
+
+        private CellXml cell;
+        private StringBuilder target;
+        private StringBuilder formula;
+        private int formulaDepth;
+        private boolean inInlineString;
+        private boolean inPhonetic;
+        private StringBuilder text;
+
+        SheetRewriter(Writer writer, ReadOnlySharedStringsTable strings, PagedStudentStore store,
+                      RankIndex ranks, int[] rankColumns) {
+            this.writer = writer;
+            this.strings = strings;
+            this.store = store;
+            this.ranks = ranks;
+            this.rankColumns = rankColumns;
+            target = pending;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            String name = localName(qName);
+            if (cell != null) {
+                startInCell(name, qName, attributes);
+                return;
+            }
+            if (rowCells != null && name.equals("c")) {
+                closeOpenTag();
+                cell = new CellXml();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    cell.attributes.add(new String[]{attributes.getQName(i), attributes.getValue(i)});
+                }
+                String reference = attributes.getValue("r");
+                cell.column = reference != null ? new CellReference(reference).getCol() : nextColumn;
+                nextColumn = cell.column + 1;
+                cell.type = attributes.getValue("t");
+                target = cell.body;
+                return;
+            }
+            if (rowCells == null && name.equals("row")) {
+                closeOpenTag();
+                prefix = qName.substring(0, qName.length() - name.length());
+                rowAttributes = new ArrayList<>();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    rowAttributes.add(new String[]{attributes.getQName(i), attributes.getValue(i)});
+                }
+                String r = attributes.getValue("r");
+                rowIndex = r != null ? Integer.parseInt(r) - 1 : rowIndex + 1;
+                rowCells = new ArrayList<>();
+                rowExtra = new StringBuilder();
+                nextColumn = 0;
+                target = rowExtra;
+                return;
+            }
+            if (name.equals("dimension") && rankColumns != null) {
+                echoStart(qName, widenDimension(attributes));
+                return;
+            }
+            echoStart(qName, attributes);
+        }
+
+        private void startInCell(String name, String qName, Attributes attributes) {
+            if (name.equals("f") && formula == null) {
+                closeOpenTag();
+                formula = new StringBuilder();
+                target = formula;
+            }
+            if (formula != null) {
+                formulaDepth++;
+            }
+            if (name.equals("is")) {
+                inInlineString = true;
+            } else if (name.equals("rPh")) {
+                inPhonetic = true;
+            }
+            text = name.equals("v") && formula == null ? cell.value
+                    : name.equals("t") && inInlineString && !inPhonetic ? cell.inlineText : null;
+            echoStart(qName, attributes);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            String name = localName(qName);
+            text = null;
+            if (cell != null && name.equals("c") && formula == null) {
+                closeOpenTag();
+                rowCells.add(cell);
+                cell = null;
+                target = rowExtra;
+                return;
+            }
+            if (cell == null && rowCells != null && name.equals("row")) {
+                closeOpenTag();
+                finishRow(qName);
+                target = pending;
+                flushIfLarge();
+                return;
+            }
+            echoEnd(qName);
+            if (cell != null) {
+                if (name.equals("is")) {
+                    inInlineString = false;
+                } else if (name.equals("rPh")) {
+                    inPhonetic = false;
+                }
+                if (formula != null && --formulaDepth == 0) {
+                    cell.formula = formula.toString();
+                    cell.body.append(cell.formula);
+                    formula = null;
+                    target = cell.body;
+                }
+            }
+        }
+
+        @Override
+        public void endDocument() {
+            closeOpenTag();
+            flush();
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (target == rowExtra && new String(ch, start, length).trim().isEmpty()) {
+                // Indentation between cells would otherwise pile up after the last one
+                return;
+            }
+            closeOpenTag();
+            if (text != null) {
+                text.append(ch, start, length);
+            }
+            escape(target, ch, start, length, false);
+        }
+
+        @Override
+        public void processingInstruction(String piTarget, String data) {
+            closeOpenTag();
+            target.append("<?").append(piTarget);
+            if (data != null && !data.isEmpty()) {
+                target.append(' ').append(data);
+            }
+            target.append("?>");
+        }
+
+        private void finishRow(String qName) {
+            boolean modified = false;
+            if (rowIndex == 0) {
+                if (rankColumns != null) {
+                    modified |= setTitle(rankColumns[0], ExcelHandler.RANK_TITLE);
+                    modified |= setTitle(rankColumns[1], ExcelHandler.PERCENTILE_TITLE);
+                }
+            } else if (rowIndex <= store.getRowCount() && store.isPresent(rowIndex)) {
+                for (int field = 0; field < RowDelta.FIELD_COUNT; field++) {
+                    modified |= setNumber(FIRST_MARK_COLUMN + field, store.getValue(rowIndex, field));
+                }
+                int rank = ranks.getRank(rowIndex);
+                if (rank >= 0 && rankColumns != null) {
+                    modified |= setNumber(rankColumns[0], rank);
+                    modified |= setNumber(rankColumns[1], Math.round(ranks.getPercentile(rowIndex) * 100) / 100.0);
+                }
+            }
+
+            pending.append('<').append(qName);
+            for (String[] attribute : rowAttributes) {
+                // Spans only hint at the cell range and go stale once cells are added
+                if (!modified || !attribute[0].equals("spans")) {
+                    appendAttribute(pending, attribute[0], attribute[1]);
+                }
+            }
+            if (rowCells.isEmpty() && rowExtra.length() == 0) {
+                pending.append("/>");
+            } else {
+                pending.append('>');
+                for (CellXml rowCell : rowCells) {
+                    appendCell(rowCell, modified);
+                }
+                pending.append(rowExtra).append("</").append(qName).append('>');
+            }
+            rowAttributes = null;
+            rowCells = null;
+            rowExtra = null;
+        }
+
+        private boolean setTitle(int column, String title) {
+            int index = find(column);
+            CellXml existing = index >= 0 ? rowCells.get(index) : null;
+            if (existing != null && title.equalsIgnoreCase(existing.text(strings).trim())) {
+                return false;
+            }
+            CellXml replacement = replacementFor(existing, column);
+            setAttribute(replacement, "t", "inlineStr");
+            replacement.type = "inlineStr";
+            replacement.body.append('<').append(prefix).append("is><").append(prefix).append("t>");
+            escape(replacement.body, title.toCharArray(), 0, title.length(), false);
+            replacement.body.append("</").append(prefix).append("t></").append(prefix).append("is>");
+            put(index, replacement);
+            return true;
+        }
+
+        // NaN removes the cell, as undo does on a loaded workbook
+        private boolean setNumber(int column, double value) {
+            int index = find(column);
+            CellXml existing = index >= 0 ? rowCells.get(index) : null;
+            double current = existing != null ? existing.number(strings) : Double.NaN;
+            if (Double.compare(current, value) == 0) {
+                return false;
+            }
+            if (Double.isNaN(value)) {
+                rowCells.remove(index);
+                return true;
+            }
+            CellXml replacement = replacementFor(existing, column);
+            replacement.attributes.removeIf(attribute -> attribute[0].equals("t"));
+            replacement.type = null;
+            if (existing != null && existing.formula != null) {
+                // Like XSSFCell.setCellValue, keep the formula and replace its cached result
+                replacement.formula = existing.formula;
+                replacement.body.append(existing.formula);
+            }
+            replacement.body.append('<').append(prefix).append("v>")
+                    .append(Double.toString(value)).append("</").append(prefix).append("v>");
+            put(index, replacement);
+            return true;
+        }
+
+        // Keeps the original attributes, so the cell style survives
+        private CellXml replacementFor(CellXml existing, int column) {
+            CellXml replacement = new CellXml();
+            replacement.column = column;
+            if (existing != null) {
+                for (String[] attribute : existing.attributes) {
+                    replacement.attributes.add(attribute.clone());
+                }
+            }
+            return replacement;
+        }
+
+        private void put(int index, CellXml replacement) {
+            if (index >= 0) {
+                rowCells.set(index, replacement);
+                return;
+            }
+            int position = 0;
+            while (position < rowCells.size() && rowCells.get(position).column < replacement.column) {
+                position++;
+            }
+            rowCells.add(position, replacement);
+        }
+
+        private int find(int column) {
+            for (int i = 0; i < rowCells.size(); i++) {
+                if (rowCells.get(i).column == column) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static void setAttribute(CellXml target, String name, String value) {
+            for (String[] attribute : target.attributes) {
+                if (attribute[0].equals(name)) {
+                    attribute[1] = value;
+                    return;
+                }
+            }
+            target.attributes.add(new String[]{name, value});
+        }
+
+        // Cells of a modified row all get a reference, since inserted cells break implicit positions
+        private void appendCell(CellXml rowCell, boolean withReference) {
+            pending.append('<').append(prefix).append('c');
+            boolean hasReference = false;
+            for (String[] attribute : rowCell.attributes) {
+                hasReference |= attribute[0].equals("r");
+            }
+            if (withReference && !hasReference) {
+                appendAttribute(pending, "r", new CellReference(rowIndex, rowCell.column).formatAsString(false));
+            }
+            for (String[] attribute : rowCell.attributes) {
+                appendAttribute(pending, attribute[0], attribute[1]);
+            }
+            if (rowCell.body.length() == 0) {
+                pending.append("/>");
+            } else {
+                pending.append('>').append(rowCell.body).append("</").append(prefix).append("c>");
+            }
+        }
+
+        private Attributes widenDimension(Attributes attributes) {
+            AttributesImpl widened = new AttributesImpl(attributes);
+            int index = widened.getIndex("ref");
+            if (index >= 0) {
+                try {
+                    CellRangeAddress range = CellRangeAddress.valueOf(widened.getValue(index));
+                    int lastColumn = Math.max(range.getLastColumn(), Math.max(rankColumns[0], rankColumns[1]));
+                    range.setLastColumn(lastColumn);
+                    widened.setValue(index, range.formatAsString());
+                } catch (RuntimeException e) {
+                    // An unreadable hint is left as it was
+                }
+            }
+            return widened;
+        }
+
+        private void echoStart(String qName, Attributes attributes) {
+            closeOpenTag();
+            target.append('<').append(qName);
+            for (int i = 0; i < attributes.getLength(); i++) {
+                appendAttribute(target, attributes.getQName(i), attributes.getValue(i));
+            }
+            tagOpen = true;
+        }
+
+        private void echoEnd(String qName) {
+            if (tagOpen) {
+                target.append("/>");
+                tagOpen = false;
+            } else {
+                target.append("</").append(qName).append('>');
+            }
+        }
+
+        private void closeOpenTag() {
+            if (tagOpen) {
+                target.append('>');
+                tagOpen = false;
+            }
+        }
+
+        private static void appendAttribute(StringBuilder out, String name, String value) {
+            out.append(' ').append(name).append("=\"");
+            escape(out, value.toCharArray(), 0, value.length(), true);
+            out.append('"');
+        }
+
+        private static void escape(StringBuilder out, char[] ch, int start, int length, boolean attribute) {
+            for (int i = start; i < start + length; i++) {
+                char c = ch[i];
+                switch (c) {
+                    case '&':
+                        out.append("&amp;");
+                        break;
+                    case '<':
+                        out.append("&lt;");
+                        break;
+                    case '>':
+                        out.append("&gt;");
+                        break;
+                    case '"':
+                        out.append(attribute ? "&quot;" : "\"");
+                        break;
+                    case '\r':
+                        out.append("&#13;");
+                        break;
+                    case '\n':
+                    case '\t':
+                        if (attribute) {
+                            out.append("&#").append((int) c).append(';');
+                        } else {
+                            out.append(c);
+                        }
+                        break;
+                    default:
+                        out.append(c);
+                }
+            }
+        }
+
+        private void flushIfLarge() {
+            if (pending.length() >= 64 * 1024) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            try {
+                writer.append(pending);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pending.setLength(0);
+        }
+    }
+}
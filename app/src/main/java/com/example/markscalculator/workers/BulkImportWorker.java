@@ -0,0 +1,222 @@
+package com.example.markscalculator.workers;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.pm.ServiceInfo;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.work.BackoffPolicy;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.ForegroundInfo;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.markscalculator.R;
+import com.example.markscalculator.utils.ImportCheckpointStore;
+import com.example.markscalculator.utils.XlsxRowReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class BulkImportWorker extends Worker {
+    private static final String TAG = "BulkImportWorker";
+    private static final String CHANNEL_ID = "bulk_import";
+    private static final String WORK_NAME_PREFIX = "import:";
+
+    public static final String KEY_SOURCE_URI = "sourceUri";
+    public static final String KEY_CHUNK_SIZE = "chunkSize";
+    public static final String KEY_ROWS_DONE = "rowsDone";
+    public static final String KEY_TOTAL_ROWS = "totalRows";
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final NotificationManager notificationManager;
+    private final int notificationId;
+
+    public BulkImportWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+        notificationManager = context.getSystemService(NotificationManager.class);
+        notificationId = params.getId().hashCode();
+    }
+
+    public static String uniqueWorkName(Uri sourceUri) {
+        return WORK_NAME_PREFIX + ImportCheckpointStore.keyFor(sourceUri);
+    }
+
+    // KEEP means re-selecting a file that is already importing attaches to the running job
+    public static void enqueue(Context context, Uri sourceUri) {
+        Data input = new Data.Builder()
+                .putString(KEY_SOURCE_URI, sourceUri.toString())
+                .putInt(KEY_CHUNK_SIZE, DEFAULT_CHUNK_SIZE)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(BulkImportWorker.class)
+                .setInputData(input)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 10, TimeUnit.SECONDS)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(uniqueWorkName(sourceUri), ExistingWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String uriString = getInputData().getString(KEY_SOURCE_URI);
+        if (uriString == null) {
+            return Result.failure();
+        }
+        Uri sourceUri = Uri.parse(uriString);
+        int chunkSize = Math.max(1, getInputData().getInt(KEY_CHUNK_SIZE, DEFAULT_CHUNK_SIZE));
+
+        ImportCheckpointStore store;
+        try {
+            store = new ImportCheckpointStore(getApplicationContext(), sourceUri);
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening import checkpoint: " + e.getMessage());
+            return Result.failure();
+        }
+        if (store.isComplete()) {
+            return Result.success(progressData(store.getTotalRows(), store.getTotalRows()));
+        }
+
+        setForegroundAsync(createForegroundInfo(store.getNextRow() - 1, store.getTotalRows()));
+        Log.d(TAG, "Resuming import at row " + store.getNextRow());
+
+        // Rows are parsed as they stream in and each chunk is released once it is checkpointed
+        ChunkWriter writer = new ChunkWriter(store, chunkSize);
+        try {
+            if (store.getNextRow() == 1) {
+                try (InputStream in = getApplicationContext().getContentResolver().openInputStream(sourceUri)) {
+                    if (in == null) {
+                        throw new IOException("Could not open " + sourceUri);
+                    }
+                    store.saveSourceCopy(in);
+                }
+            }
+            XlsxRowReader.read(store.getSourceCopy(), ImportCheckpointStore.COLUMN_COUNT, (rowIndex, cells) -> {
+                if (rowIndex > 0 && rowIndex >= writer.getResumeRow()) {
+                    writer.accept(rowIndex, cells.clone());
+                }
+            });
+            writer.flush();
+
+            int totalRows = store.getNextRow() - 1;
+            store.setTotalRows(totalRows);
+            store.markComplete();
+            Log.d(TAG, "Import finished: " + totalRows + " rows");
+            return Result.success(progressData(totalRows, totalRows));
+        } catch (ImportStoppedException e) {
+            return Result.retry();
+        } catch (IOException e) {
+            Log.e(TAG, "Error importing file, will retry: " + e.getMessage());
+            return Result.retry();
+        } catch (Exception e) {
+            Log.e(TAG, "Error importing file: " + e.getMessage());
+            return Result.failure();
+        }
+    }
+
+    private static Data progressData(int rowsDone, int totalRows) {
+        return new Data.Builder()
+                .putInt(KEY_ROWS_DONE, rowsDone)
+                .putInt(KEY_TOTAL_ROWS, totalRows)
+                .build();
+    }
+
+    private ForegroundInfo createForegroundInfo(int rowsDone, int totalRows) {
+        Notification notification = buildNotification(rowsDone, totalRows);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return new ForegroundInfo(notificationId, notification,
+                    ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC);
+        }
+        return new ForegroundInfo(notificationId, notification);
+    }
+
+    private Notification buildNotification(int rowsDone, int totalRows) {
+        Context context = getApplicationContext();
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                context.getString(R.string.import_channel_name), NotificationManager.IMPORTANCE_LOW);
+        notificationManager.createNotificationChannel(channel);
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_file_upload)
+                .setContentTitle(context.getString(R.string.import_notification_title))
+                .setOngoing(true)
+                .setOnlyAlertOnce(true);
+        if (totalRows > 0) {
+            builder.setContentText(context.getString(R.string.import_progress_format, rowsDone, totalRows))
+                    .setProgress(totalRows, rowsDone, false);
+        } else {
+            // The row count is only known once the whole file has streamed through
+            builder.setContentText(context.getString(R.string.import_rows_format, rowsDone))
+                    .setProgress(0, 0, true);
+        }
+        return builder.build();
+    }
+
+    private static class ImportStoppedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ImportStoppedException() {
+            super("Import stopped");
+        }
+    }
+
+    /** Buffers streamed rows and commits them to the checkpoint one chunk at a time. */
+    private class ChunkWriter {
+        private final ImportCheckpointStore store;
+        private final int chunkSize;
+        private final List<String[]> chunk;
+
+        ChunkWriter(ImportCheckpointStore store, int chunkSize) {
+            this.store = store;
+            this.chunkSize = chunkSize;
+            this.chunk = new ArrayList<>(chunkSize);
+        }
+
+        // Rows below this were checkpointed by an earlier run
+        int getResumeRow() {
+            return store.getNextRow() + chunk.size();
+        }
+
+        void accept(int row, String[] cells) throws IOException {
+            if (isStopped()) {
+                throw new ImportStoppedException();
+            }
+            // Rows the sheet does not contain are kept as gaps so indexes line up
+            while (getResumeRow() < row) {
+                add(null);
+            }
+            add(cells);
+        }
+
+        private void add(String[] cells) throws IOException {
+            chunk.add(cells);
+            if (chunk.size() >= chunkSize) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            store.writeChunk(chunk);
+            chunk.clear();
+
+            int rowsDone = store.getNextRow() - 1;
+            setProgressAsync(progressData(rowsDone, store.getTotalRows()));
+            notificationManager.notify(notificationId, buildNotification(rowsDone, store.getTotalRows()));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.markscalculator.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EditHistoryTest {
+    private final List<String> applied = new ArrayList<>();
+    private final EditHistory.Applier recorder =
+            (row, field, value) -> applied.add(row + ":" + field + "=" + value);
+
+    @Test
+    public void undoAndRedo_applyWholeGroupsInOrder() {
+        EditHistory history = new EditHistory(100 * EditHistory.BYTES_PER_ENTRY);
+        history.beginGroup();
+        history.record(4, 0, 1, 2);
+        history.record(4, 1, 3, 4);
+        history.record(4, 2, Double.NaN, 5);
+
+        assertEquals(4, history.undo(recorder));
+        assertEquals(Arrays.asList("4:2=NaN", "4:1=3.0", "4:0=1.0"), applied);
+        assertFalse(history.canUndo());
+
+        applied.clear();
+        assertEquals(4, history.redo(recorder));
+        assertEquals(Arrays.asList("4:0=2.0", "4:1=4.0", "4:2=5.0"), applied);
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void record_wrapsAroundDroppingOldestEdits() {
+        EditHistory history = new EditHistory(3 * EditHistory.BYTES_PER_ENTRY);
+        assertEquals(3, history.getCapacity());
+        for (int row = 1; row <= 5; row++) {
+            history.beginGroup();
+            history.record(row, 0, row, row + 10);
+        }
+
+        assertEquals(5, history.undo(recorder));
+        assertEquals(4, history.undo(recorder));
+        assertEquals(3, history.undo(recorder));
+        assertEquals(-1, history.undo(recorder));
+        assertEquals(Arrays.asList("5:0=5.0", "4:0=4.0", "3:0=3.0"), applied);
+
+        applied.clear();
+        assertEquals(3, history.redo(recorder));
+        assertEquals(4, history.redo(recorder));
+        assertEquals(5, history.redo(recorder));
+        assertEquals(-1, history.redo(recorder));
+        assertEquals(Arrays.asList("3:0=13.0", "4:0=14.0", "5:0=15.0"), applied);
+    }
+
+    @Test
+    public void record_splitsGroupWhoseOldestEntryIsDropped() {
+        EditHistory history = new EditHistory(3 * EditHistory.BYTES_PER_ENTRY);
+        history.beginGroup();
+        history.record(1, 0, 0, 10);
+        history.record(1, 1, 0, 11);
+        history.beginGroup();
+        history.record(2, 0, 0, 20);
+        history.beginGroup();
+        history.record(3, 0, 0, 30);
+
+        assertEquals(3, history.undo(recorder));
+        assertEquals(2, history.undo(recorder));
+        // Only the surviving half of row 1's group is left, and it undoes on its own
+        assertEquals(1, history.undo(recorder));
+        assertEquals(-1, history.undo(recorder));
+        assertEquals(Arrays.asList("3:0=0.0", "2:0=0.0", "1:1=0.0"), applied);
+    }
+
+    @Test
+    public void record_discardsRedoAfterUndo() {
+        EditHistory history = new EditHistory(10 * EditHistory.BYTES_PER_ENTRY);
+        history.beginGroup();
+        history.record(1, 0, 0, 10);
+        history.beginGroup();
+        history.record(2, 0, 0, 20);
+
+        assertEquals(2, history.undo(recorder));
+        assertTrue(history.canRedo());
+        history.beginGroup();
+        history.record(3, 0, 0, 30);
+
+        assertFalse(history.canRedo());
+        assertEquals(-1, history.redo(recorder));
+        assertEquals(3, history.undo(recorder));
+        assertEquals(1, history.undo(recorder));
+        assertFalse(history.canUndo());
+    }
+
+    @Test
+    public void clear_dropsEverything() {
+        EditHistory history = new EditHistory(10 * EditHistory.BYTES_PER_ENTRY);
+        history.record(1, 0, 0, 10);
+        history.undo(recorder);
+
+        history.clear();
+
+        assertFalse(history.canUndo());
+        assertFalse(history.canRedo());
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.markscalculator.utils;
+
+import com.example.markscalculator.models.StudentData;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ExcelHandlerTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void saveWorkbook_appendsRankAfterOtherColumns() throws IOException {
+        File file = temporaryFolder.newFile("extras.xlsx");
+        new SyntheticClassFile.Builder().setRows(50).setExtraColumns(2).build().writeXlsx(file);
+        String note = readCell(file, 7, 10);
+
+        ExcelHandler handler = new ExcelHandler(DocumentStreams.forFile(file));
+        handler.updateMarks(7, MarksScheme.MAX_EXAM_MARKS, MarksScheme.MAX_EXAM_MARKS,
+                MarksScheme.MAX_EXAM_MARKS, MarksScheme.MAX_AAT_MARKS);
+        handler.saveWorkbook();
+        // A second save finds the columns by title instead of appending again
+        handler.saveWorkbook();
+        handler.close();
+
+        try (InputStream in = new FileInputStream(file);
+             XSSFWorkbook workbook = new XSSFWorkbook(in)) {
+            Sheet sheet = workbook.getSheetAt(0);
+            Row header = sheet.getRow(0);
+            assertEquals("Extra1", header.getCell(9).getStringCellValue());
+            assertEquals("Extra2", header.getCell(10).getStringCellValue());
+            assertEquals("Rank", header.getCell(11).getStringCellValue());
+            assertEquals("Percentile", header.getCell(12).getStringCellValue());
+            assertEquals(13, header.getLastCellNum());
+            assertEquals(note, sheet.getRow(7).getCell(10).getStringCellValue());
+            assertEquals(1.0, sheet.getRow(7).getCell(11).getNumericCellValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void undo_restoresTextAndFormulaCells() throws IOException {
+        File file = temporaryFolder.newFile("mixed.xlsx");
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             OutputStream out = new FileOutputStream(file)) {
+            Sheet sheet = workbook.createSheet();
+            sheet.createRow(0).createCell(0).setCellValue("Name");
+            Row row = sheet.createRow(1);
+            row.createCell(0).setCellValue("Asha");
+            row.createCell(1).setCellValue("1RV21CS001");
+            row.createCell(2).setCellValue("25");
+            row.createCell(3).setCellValue("AB");
+            row.createCell(4).setCellFormula("10+5");
+            row.createCell(5).setCellValue(7);
+            workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+            workbook.write(out);
+        }
+
+        ExcelHandler handler = new ExcelHandler(DocumentStreams.forFile(file));
+        assertEquals(25.0, handler.getStudentData(1).getExam1(), 0.0);
+        assertEquals(15.0, handler.getStudentData(1).getExam3(), 0.0);
+        handler.updateMarks(1, 30, 20, 40, 8);
+        assertEquals(1, handler.undo());
+        handler.saveWorkbook();
+        handler.close();
+
+        try (InputStream in = new FileInputStream(file);
+             XSSFWorkbook workbook = new XSSFWorkbook(in)) {
+            Row row = workbook.getSheetAt(0).getRow(1);
+            assertEquals("25", row.getCell(2).getStringCellValue());
+            assertEquals("AB", row.getCell(3).getStringCellValue());
+            assertEquals("10+5", row.getCell(4).getCellFormula());
+            assertEquals(7.0, row.getCell(5).getNumericCellValue(), 0.0);
+            assertNull(row.getCell(6));
+        }
+    }
+
+    @Test
+    public void redo_reappliesUndoneEdits() throws IOException {
+        File file = temporaryFolder.newFile("redo.xlsx");
+        new SyntheticClassFile.Builder().setRows(5).build().writeXlsx(file);
+
+        ExcelHandler handler = new ExcelHandler(DocumentStreams.forFile(file));
+        handler.updateMarks(2, 30, 20, 40, 8);
+        handler.undo();
+        assertEquals(2, handler.redo());
+
+        assertEquals(30.0, handler.getStudentData(2).getExam1(), 0.0);
+        assertEquals(8.0, handler.getStudentData(2).getAat(), 0.0);
+        handler.close();
+    }
+
+    @Test
+    public void savePaged_keepsTheRestOfTheWorkbook() throws IOException {
+        File file = temporaryFolder.newFile("paged.xlsx");
+        short markStyle;
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             OutputStream out = new FileOutputStream(file)) {
+            CellStyle style = workbook.createCellStyle();
+            style.setDataFormat(workbook.createDataFormat().getFormat("0.00"));
+            markStyle = style.getIndex();
+            Sheet sheet = workbook.createSheet("Marks");
+            String[] titles = {"Name", "USN", "Exam1", "Exam2", "Exam3", "AAT", "Total", "Average", "Final",
+                    "Extra1", "Extra2", "Comment"};
+            Row header = sheet.createRow(0);
+            for (int column = 0; column < titles.length; column++) {
+                header.createCell(column).setCellValue(titles[column]);
+            }
+            for (int rowIndex = 1; rowIndex <= 3; rowIndex++) {
+                Row row = sheet.createRow(rowIndex);
+                row.createCell(0).setCellValue("Student " + rowIndex);
+                row.createCell(1).setCellValue(String.format("1RV21CS%03d", rowIndex));
+                for (int column = 2; column <= 5; column++) {
+                    Cell cell = row.createCell(column);
+                    cell.setCellValue(10 + rowIndex);
+                    cell.setCellStyle(style);
+                }
+                row.createCell(6).setCellFormula("C" + (rowIndex + 1) + "+D" + (rowIndex + 1) + "+E" + (rowIndex + 1));
+                row.createCell(9).setCellValue("note " + rowIndex);
+                row.createCell(11).setCellValue("keep " + rowIndex);
+            }
+            sheet.getRow(2).getCell(2).setCellValue("25");
+            workbook.createSheet("Notes").createRow(0).createCell(0).setCellValue("second sheet");
+            workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+            workbook.write(out);
+        }
+
+        ExcelHandler handler = new ExcelHandler(DocumentStreams.forFile(file), 0, temporaryFolder.newFolder("spill"));
+        assertTrue(handler.isPaged());
+        handler.updateMarks(3, 40, 41, 42, 9);
+        handler.saveWorkbook();
+        // A second save patches the file written by the first
+        handler.updateMarks(1, 1, 2, 3, 4);
+        handler.saveWorkbook();
+        handler.close();
+
+        try (InputStream in = new FileInputStream(file);
+             XSSFWorkbook workbook = new XSSFWorkbook(in)) {
+            assertEquals("second sheet", workbook.getSheet("Notes").getRow(0).getCell(0).getStringCellValue());
+            Sheet sheet = workbook.getSheet("Marks");
+            Row header = sheet.getRow(0);
+            assertEquals("Comment", header.getCell(11).getStringCellValue());
+            assertEquals("Rank", header.getCell(12).getStringCellValue());
+            assertEquals("Percentile", header.getCell(13).getStringCellValue());
+
+            Row edited = sheet.getRow(3);
+            assertEquals(40.0, edited.getCell(2).getNumericCellValue(), 0.0);
+            assertEquals(markStyle, edited.getCell(2).getCellStyle().getIndex());
+            assertEquals("C4+D4+E4", edited.getCell(6).getCellFormula());
+            assertEquals(123.0, edited.getCell(6).getNumericCellValue(), 0.0);
+            assertEquals("note 3", edited.getCell(9).getStringCellValue());
+            assertEquals("keep 3", edited.getCell(11).getStringCellValue());
+            assertEquals(1.0, edited.getCell(12).getNumericCellValue(), 0.0);
+            assertEquals(100.0, edited.getCell(13).getNumericCellValue(), 0.0);
+
+            Row untouched = sheet.getRow(2);
+            assertEquals("25", untouched.getCell(2).getStringCellValue());
+            assertEquals("C3+D3+E3", untouched.getCell(6).getCellFormula());
+            assertEquals(2.0, untouched.getCell(12).getNumericCellValue(), 0.0);
+            assertEquals(3.0, sheet.getRow(1).getCell(12).getNumericCellValue(), 0.0);
+            assertEquals(1.0, sheet.getRow(1).getCell(2).getNumericCellValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void pagedLoad_keepsNamesLongerThan64Kb() throws IOException {
+        File file = temporaryFolder.newFile("long-name.xlsx");
+        // 30000 three-byte characters encode to more than writeUTF's 65535-byte limit
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 30000; i++) {
+            name.append('अ');
+        }
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             OutputStream out = new FileOutputStream(file)) {
+            Sheet sheet = workbook.createSheet();
+            sheet.createRow(0).createCell(0).setCellValue("Name");
+            Row row = sheet.createRow(1);
+            row.createCell(0).setCellValue(name.toString());
+            row.createCell(1).setCellValue("1RV21CS001");
+            row.createCell(2).setCellValue(25);
+            workbook.write(out);
+        }
+
+        ExcelHandler handler = new ExcelHandler(DocumentStreams.forFile(file), 0, temporaryFolder.newFolder("spill"));
+        assertEquals(name.toString(), handler.getStudentData(1).getName());
+        assertEquals("1RV21CS001", handler.getStudentData(1).getUsn());
+        handler.close();
+    }
+
+    @Test
+    public void importedLoad_matchesPagedLoad() throws IOException {
+        File file = temporaryFolder.newFile("imported.xlsx");
+        new SyntheticClassFile.Builder().setRows(700).build().writeXlsx(file);
+
+        // What BulkImportWorker leaves behind, in chunks of 300 rows
+        ImportCheckpointStore checkpoint = new ImportCheckpointStore(temporaryFolder.newFolder("import"));
+        try (InputStream in = new FileInputStream(file)) {
+            checkpoint.saveSourceCopy(in);
+        }
+        List<String[]> chunk = new ArrayList<>();
+        XlsxRowReader.read(checkpoint.getSourceCopy(), ImportCheckpointStore.COLUMN_COUNT, (rowIndex, cells) -> {
+            if (rowIndex > 0) {
+                chunk.add(cells.clone());
+            }
+            if (chunk.size() == 300) {
+                checkpoint.writeChunk(chunk);
+                chunk.clear();
+            }
+        });
+        checkpoint.writeChunk(chunk);
+        checkpoint.markComplete();
+
+        File spill = temporaryFolder.newFolder("spill");
+        ExcelHandler paged = new ExcelHandler(DocumentStreams.forFile(file), 1024 * 1024, spill);
+        ExcelHandler imported = new ExcelHandler(DocumentStreams.forFile(file), checkpoint, 1024 * 1024, spill);
+        assertEquals(paged.getStudentCount(), imported.getStudentCount());
+        for (int row = 1; row <= paged.getStudentCount(); row++) {
+            StudentData expected = paged.getStudentData(row);
+            StudentData actual = imported.getStudentData(row);
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getUsn(), actual.getUsn());
+            assertEquals(expected.getExam1(), actual.getExam1(), 0.0);
+            assertEquals(expected.getAat(), actual.getAat(), 0.0);
+        }
+        paged.close();
+
+        imported.updateMarks(400, 30, 20, 40, 8);
+        imported.saveWorkbook();
+        imported.close();
+        ExcelHandler reloaded = new ExcelHandler(DocumentStreams.forFile(file));
+        assertEquals(700, reloaded.getStudentCount());
+        assertEquals(40.0, reloaded.getStudentData(400).getExam3(), 0.0);
+        reloaded.close();
+    }
+
+    @Test
+    public void resolveRankColumns_prefersTitlesThenBlankDefaults() {
+        String[] base = {"Name", "USN", "Exam1", "Exam2", "Exam3", "AAT", "Total", "Average", "Final"};
+
+        assertArrayEquals(new int[]{9, 10}, ExcelHandler.resolveRankColumns(base));
+        assertArrayEquals(new int[]{9, 10}, ExcelHandler.resolveRankColumns(
+                with(base, "Rank", "Percentile")));
+        assertArrayEquals(new int[]{12, 11}, ExcelHandler.resolveRankColumns(
+                with(base, "Notes", "", "percentile", " rank ")));
+        assertArrayEquals(new int[]{9, 12}, ExcelHandler.resolveRankColumns(
+                with(base, "", "Notes", "Extra")));
+        assertArrayEquals(new int[]{11, 12}, ExcelHandler.resolveRankColumns(
+                with(base, "Notes", "Extra")));
+        assertNull(ExcelHandler.resolveRankColumns(null));
+    }
+
+    private static String[] with(String[] base, String... titles) {
+        String[] combined = new String[base.length + titles.length];
+        System.arraycopy(base, 0, combined, 0, base.length);
+        System.arraycopy(titles, 0, combined, base.length, titles.length);
+        return combined;
+    }
+
+    private static String readCell(File file, int row, int column) throws IOException {
+        try (InputStream in = new FileInputStream(file);
+             XSSFWorkbook workbook = new XSSFWorkbook(in)) {
+            return workbook.getSheetAt(0).getRow(row).getCell(column).getStringCellValue();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.example.markscalculator.utils;
+
+import com.example.markscalculator.models.StudentData;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ * Loads, edits and saves generated class files at 1k, 10k and 100k rows and
+ * fails when wall time or peak heap exceed the budgets recorded in
+ * scale-budgets.properties.
+ */
+public class HandlerScaleTest {
+    private static final int EDITS = 1000;
+    private static final long PAGED_HEAP_BUDGET = 8 * 1024 * 1024;
+    private static final long PAGED_HEAP_SLACK_MB = 4;
+    private static Properties budgets;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void loadBudgets() throws IOException {
+        budgets = new Properties();
+        try (InputStream in = HandlerScaleTest.class.getClassLoader()
+                .getResourceAsStream("scale-budgets.properties")) {
+            assertNotNull("scale-budgets.properties missing", in);
+            budgets.load(in);
+        }
+    }
+
+    @Test
+    public void xlsx_1k() throws IOException {
+        runXlsx(1_000);
+    }
+
+    @Test
+    public void xlsx_10k() throws IOException {
+        runXlsx(10_000);
+    }
+
+    @Test
+    @Category(LargeScaleTest.class)
+    public void xlsx_100k() throws IOException {
+        runXlsx(100_000);
+    }
+
+    @Test
+    public void xlsxPaged_100k() throws IOException {
+        int rows = 100_000;
+        File file = temporaryFolder.newFile("paged-" + rows + ".xlsx");
+        new SyntheticClassFile.Builder().setRows(rows).setStyled(true)
+                .setBlankRate(0.02).setDirtyRate(0.02).setExtraColumns(2).build().writeXlsx(file);
+        File spill = temporaryFolder.newFolder("spill");
+
+        Measurement measurement = Measurement.start();
+        ExcelHandler handler = new ExcelHandler(DocumentStreams.forFile(file), PAGED_HEAP_BUDGET, spill);
+        long loaded = measurement.elapsedMillis();
+        assertTrue(handler.isPaged());
+        assertEquals(rows, handler.getStudentCount());
+        int[] editedRows = editedRows(rows);
+        for (int row : editedRows) {
+            handler.updateMarks(row, 40, 41, 42, 9);
+        }
+        long edited = measurement.elapsedMillis();
+        long retainedMb = measurement.retainedHeapMb();
+        assertEquals(SyntheticClassFile.usnFor(rows), handler.getStudentData(rows).getUsn());
+        handler.saveWorkbook();
+        handler.close();
+        long saved = measurement.elapsedMillis();
+        long peakHeapMb = measurement.peakHeapMb();
+
+        // The page table may hold the budget; anything beyond that means rows stayed on the heap
+        assertTrue("Paged load retained " + retainedMb + " MB",
+                retainedMb <= PAGED_HEAP_BUDGET / (1024 * 1024) + PAGED_HEAP_SLACK_MB);
+        assertEquals(0, spill.list().length);
+
+        ExcelHandler reloaded = new ExcelHandler(DocumentStreams.forFile(file), PAGED_HEAP_BUDGET, spill);
+        try {
+            StudentData student = reloaded.getStudentData(editedRows[editedRows.length - 1]);
+            assertEquals(41.0, student.getExam2(), 0.0);
+            assertEquals(9.0, student.getAat(), 0.0);
+        } finally {
+            reloaded.close();
+        }
+        assertWithinBudget("xlsx-paged", rows, loaded, edited, saved, peakHeapMb);
+    }
+
+    @Test
+    public void xlsxPaged_matchesWorkbookAndUndoes() throws IOException {
+        File file = temporaryFolder.newFile("paged.xlsx");
+        new SyntheticClassFile.Builder().setRows(3000).setStyled(true)
+                .setBlankRate(0.1).setDirtyRate(0.1).build().writeXlsx(file);
+
+        ExcelHandler workbook = new ExcelHandler(DocumentStreams.forFile(file));
+        // Two resident pages, so reading every row forces evictions
+        ExcelHandler paged = new ExcelHandler(DocumentStreams.forFile(file), 0,
+                temporaryFolder.newFolder("spill"));
+        try {
+            assertEquals(workbook.getStudentCount(), paged.getStudentCount());
+            for (int row = 1; row <= workbook.getStudentCount(); row++) {
+                StudentData expected = workbook.getStudentData(row);
+                StudentData actual = paged.getStudentData(row);
+                assertEquals(expected.getUsn(), actual.getUsn());
+                assertEquals(expected.getName(), actual.getName());
+                assertEquals(expected.getExam3(), actual.getExam3(), 0.0);
+            }
+            assertEquals(workbook.getRank(1500), paged.getRank(1500));
+
+            double before = paged.getStudentData(10).getExam1();
+            paged.updateMarks(10, 1, 2, 3, 4);
+            for (int row = 1; row <= paged.getStudentCount(); row += 100) {
+                paged.getStudentData(row);
+            }
+            assertEquals(1.0, paged.getStudentData(10).getExam1(), 0.0);
+            assertEquals(10, paged.undo());
+            assertEquals(before, paged.getStudentData(10).getExam1(), 0.0);
+        } finally {
+            workbook.close();
+            paged.close();
+        }
+    }
+
+    @Test
+    public void csv_1k() throws IOException {
+        runCsv(1_000);
+    }
+
+    @Test
+    public void csv_10k() throws IOException {
+        runCsv(10_000);
+    }
+
+    @Test
+    public void csv_100k() throws IOException {
+        runCsv(100_000);
+    }
+
+    @Test
+    public void generator_isDeterministic() throws IOException {
+        SyntheticClassFile generator = new SyntheticClassFile.Builder()
+                .setRows(500).setStyled(true).setBlankRate(0.05).setDirtyRate(0.05)
+                .setExtraColumns(3).setQuotedNames(true).build();
+        File first = temporaryFolder.newFile("first.csv");
+        File second = temporaryFolder.newFile("second.csv");
+        generator.writeCsv(first);
+        generator.writeCsv(second);
+        assertArrayEquals(Files.readAllBytes(first.toPath()), Files.readAllBytes(second.toPath()));
+    }
+
+    @Test
+    public void xlsx_readsBlankAndDirtyCells() throws IOException {
+        File file = temporaryFolder.newFile("dirty.xlsx");
+        new SyntheticClassFile.Builder().setRows(200).setStyled(true)
+                .setBlankRate(0.2).setDirtyRate(0.3).setExtraColumns(4).build().writeXlsx(file);
+
+        ExcelHandler handler = new ExcelHandler(DocumentStreams.forFile(file));
+        try {
+            assertEquals(200, handler.getStudentCount());
+            for (int row = 1; row <= 200; row++) {
+                StudentData student = handler.getStudentData(row);
+                assertNotNull(student);
+                assertEquals(SyntheticClassFile.usnFor(row), student.getUsn());
+                assertTrue(student.getExam1() >= 0 && student.getExam1() <= 50);
+            }
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test
+    public void csv_roundTripsQuotedNames() throws IOException {
+        File file = temporaryFolder.newFile("quoted.csv");
+        new SyntheticClassFile.Builder().setRows(200).setQuotedNames(true)
+                .setDirtyRate(0.3).build().writeCsv(file);
+
+        CsvHandler handler = new CsvHandler(DocumentStreams.forFile(file));
+        String[] names = new String[201];
+        for (int row = 1; row <= 200; row++) {
+            names[row] = handler.getStudentData(row).getName();
+        }
+        handler.updateMarks(7, 10, 20, 30);
+        handler.saveFile();
+
+        CsvHandler reloaded = new CsvHandler(DocumentStreams.forFile(file));
+        for (int row = 1; row <= 200; row++) {
+            assertEquals(names[row], reloaded.getStudentData(row).getName());
+        }
+        assertEquals(20.0, reloaded.getStudentData(7).getExam2(), 0.0);
+    }
+
+    private void runXlsx(int rows) throws IOException {
+        File file = temporaryFolder.newFile("class-" + rows + ".xlsx");
+        new SyntheticClassFile.Builder().setRows(rows).setStyled(true)
+                .setBlankRate(0.02).setDirtyRate(0.02).setExtraColumns(2).build().writeXlsx(file);
+
+        Measurement measurement = Measurement.start();
+        ExcelHandler handler = new ExcelHandler(DocumentStreams.forFile(file));
+        long loaded = measurement.elapsedMillis();
+        int[] editedRows = editedRows(rows);
+        for (int row : editedRows) {
+            handler.updateMarks(row, 40, 41, 42, 9);
+        }
+        long edited = measurement.elapsedMillis();
+        handler.saveWorkbook();
+        handler.close();
+        long saved = measurement.elapsedMillis();
+        long peakHeapMb = measurement.peakHeapMb();
+
+
+        ExcelHandler reloaded = new ExcelHandler(DocumentStreams.forFile(file));
+        try {
+            StudentData student = reloaded.getStudentData(editedRows[editedRows.length - 1]);
+            assertEquals(41.0, student.getExam2(), 0.0);
+            assertEquals(9.0, student.getAat(), 0.0);
+        } finally {
+            reloaded.close();
+        }
+        assertWithinBudget("xlsx", rows, loaded, edited, saved, peakHeapMb);
+    }
+
+    private void runCsv(int rows) throws IOException {
+        File file = temporaryFolder.newFile("class-" + rows + ".csv");
+        new SyntheticClassFile.Builder().setRows(rows)
+                .setDirtyRate(0.05).setQuotedNames(true).build().writeCsv(file);
+
+        Measurement measurement = Measurement.start();
+        CsvHandler handler = new CsvHandler(DocumentStreams.forFile(file));
+        long loaded = measurement.elapsedMillis();
+        int[] editedRows = editedRows(rows);
+        for (int row : editedRows) {
+            handler.updateMarks(row, 40, 41, 42);
+        }
+        long edited = measurement.elapsedMillis();
+        handler.saveFile();
+        handler.close();
+        long saved = measurement.elapsedMillis();
+        long peakHeapMb = measurement.peakHeapMb();
+
+
+        CsvHandler reloaded = new CsvHandler(DocumentStreams.forFile(file));
+        assertEquals(42.0, reloaded.getStudentData(editedRows[0]).getExam3(), 0.0);
+        assertWithinBudget("csv", rows, loaded, edited, saved, peakHeapMb);
+    }
+
+    private static int[] editedRows(int rows) {
+        int edits = Math.min(EDITS, rows);
+        int[] editedRows = new int[edits];
+        for (int i = 0; i < edits; i++) {
+            editedRows[i] = 1 + (int) ((long) i * rows / edits);
+        }
+        return editedRows;
+    }
+
+    // loaded, edited and saved are cumulative milliseconds since the measurement started
+    private static void assertWithinBudget(String format, int rows, long loaded, long edited, long saved,
+                                           long heapMb) {
+        String key = format + "." + rows;
+        long millisBudget = Long.parseLong(budgets.getProperty(key + ".millis"));
+        long heapBudget = Long.parseLong(budgets.getProperty(key + ".heapMb"));
+        assertTrue(key + " took " + saved + " ms (load " + loaded + ", edit " + (edited - loaded)
+                        + ", save " + (saved - edited) + "), budget " + millisBudget + " ms",
+                saved <= millisBudget);
+        assertTrue(key + " peaked at " + heapMb + " MB heap, budget " + heapBudget + " MB",
+                heapMb <= heapBudget);
+    }
+
+    private static class Measurement {
+        private final long startNanos;
+        private final long baselineBytes;
+
+        private Measurement(long baselineBytes) {
+            this.baselineBytes = baselineBytes;
+            startNanos = System.nanoTime();
+        }
+
+        static Measurement start() {
+            long baseline = usedAfterGc();
+            for (MemoryPoolMXBean pool : heapPools()) {
+                pool.resetPeakUsage();
+            }
+            return new Measurement(baseline);
+        }
+
+        long elapsedMillis() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        // Sum of per-pool peaks; an upper bound on the real peak, but stable between runs
+        long peakHeapMb() {
+            long peak = 0;
+            for (MemoryPoolMXBean pool : heapPools()) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+            return peak / (1024 * 1024);
+        }
+
+        // Heap still reachable since start(), which is what a budget has to cover
+        long retainedHeapMb() {
+            return Math.max(0, usedAfterGc() - baselineBytes) / (1024 * 1024);
+        }
+
+        private static long usedAfterGc() {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            System.gc();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+
+        private static MemoryPoolMXBean[] heapPools() {
+            return ManagementFactory.getMemoryPoolMXBeans().stream()
+                    .filter(pool -> pool.getType() == MemoryType.HEAP)
+                    .toArray(MemoryPoolMXBean[]::new);
+        }
+    }
+}
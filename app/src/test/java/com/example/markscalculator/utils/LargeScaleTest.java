@@ -0,0 +1,8 @@
+package com.example.markscalculator.utils;
+
+/**
+ * JUnit category for scale runs too heavy for the default test task.
+ * Gradle only runs them when given -PlargeScaleTests.
+ */
+public interface LargeScaleTest {
+}
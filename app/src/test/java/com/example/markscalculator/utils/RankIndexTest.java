@@ -0,0 +1,120 @@
+package com.example.markscalculator.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RankIndexTest {
+
+    @Test
+    public void getRank_sharesRankBetweenTies() {
+        RankIndex index = indexOf(50, 40, 40, 30);
+
+        assertEquals(1, index.getRank(1));
+        assertEquals(2, index.getRank(2));
+        assertEquals(2, index.getRank(3));
+        assertEquals(4, index.getRank(4));
+        assertEquals(-1, index.getRank(5));
+    }
+
+    @Test
+    public void getPercentile_countsScoresAtOrBelow() {
+        RankIndex index = indexOf(50, 40, 40, 30);
+
+        assertEquals(100.0, index.getPercentile(1), 0.0);
+        assertEquals(75.0, index.getPercentile(2), 0.0);
+        assertEquals(25.0, index.getPercentile(4), 0.0);
+        assertEquals(-1.0, index.getPercentile(99), 0.0);
+    }
+
+    @Test
+    public void getTopRows_cutsTiesAtTheThreshold() {
+        RankIndex index = indexOf(50, 40, 40, 30);
+
+        List<Integer> top = index.getTopRows(2);
+
+        assertEquals(2, top.size());
+        assertEquals(1, (int) top.get(0));
+        assertTrue(top.get(1) == 2 || top.get(1) == 3);
+        assertEquals(4, index.getTopRows(10).size());
+        assertTrue(index.getTopRows(0).isEmpty());
+        assertTrue(new RankIndex(100, 4).getTopRows(3).isEmpty());
+    }
+
+    @Test
+    public void getTopRows_matchesSortedScores() {
+        Random random = new Random(7);
+        int rows = 5000;
+        double[] scores = new double[rows + 1];
+        RankIndex index = new RankIndex(100, rows);
+        for (int row = 1; row <= rows; row++) {
+            // Hundredths, so bucketing is exact
+            scores[row] = random.nextInt(10001) / 100.0;
+            index.update(row, scores[row]);
+        }
+        double[] sorted = Arrays.copyOfRange(scores, 1, rows + 1);
+        Arrays.sort(sorted);
+
+        for (int k : new int[]{1, 2, 10, 333, 4999, 5000}) {
+            List<Integer> top = index.getTopRows(k);
+            assertEquals(k, top.size());
+            for (int i = 0; i < k; i++) {
+                assertEquals("k=" + k + " position " + i, sorted[rows - 1 - i], scores[top.get(i)], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void getTopRows_followsMovedAndRemovedRows() {
+        RankIndex index = indexOf(50, 40, 40, 30, 20);
+
+        index.update(2, 10);
+        index.remove(1);
+        index.update(5, 45);
+
+        assertEquals(Arrays.asList(5, 3, 4, 2), index.getTopRows(10));
+        assertEquals(Arrays.asList(5, 3), index.getTopRows(2));
+    }
+
+    @Test
+    public void update_movesRowAndRemoveDropsIt() {
+        RankIndex index = indexOf(50, 40, 30);
+
+        index.update(3, 60);
+        assertEquals(1, index.getRank(3));
+        assertEquals(2, index.getRank(1));
+        assertEquals(3, index.size());
+
+        index.remove(3);
+        index.remove(3);
+        assertEquals(2, index.size());
+        assertEquals(-1, index.getRank(3));
+        assertEquals(1, index.getRank(1));
+        assertEquals(50.0, index.getPercentile(2), 0.0);
+    }
+
+    @Test
+    public void update_growsPastCapacityAndClampsScores() {
+        RankIndex index = new RankIndex(100, 2);
+
+        index.update(10, 150);
+        index.update(1, -5);
+
+        assertEquals(2, index.size());
+        assertEquals(1, index.getRank(10));
+        assertEquals(2, index.getRank(1));
+        assertEquals(Arrays.asList(10, 1), index.getTopRows(2));
+    }
+
+    private static RankIndex indexOf(double... scores) {
+        RankIndex index = new RankIndex(100, scores.length);
+        for (int i = 0; i < scores.length; i++) {
+            index.update(i + 1, scores[i]);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.markscalculator.utils;
+
+import com.example.markscalculator.models.RowDelta;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class SyncClientTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private LocalSyncServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new LocalSyncServer();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void codec_roundTripsOnlyChangedFields() throws IOException {
+        ChangeTracker tracker = new ChangeTracker();
+        tracker.recordChange(1, "1RV21CS001", RowDelta.FIELD_EXAM1, 42.5);
+        tracker.recordChange(7, "1RV21CS007", RowDelta.FIELD_AAT, 9.0);
+        tracker.recordChange(1, "1RV21CS001", RowDelta.FIELD_FINAL, 17.0);
+
+        List<RowDelta> deltas = tracker.deltasSince(0);
+        List<RowDelta> decoded = DeltaCodec.decode(new ByteArrayInputStream(DeltaCodec.encode(deltas)));
+
+        assertEquals(deltas, decoded);
+        assertEquals("1RV21CS007", decoded.get(0).getUsn());
+        RowDelta first = decoded.get(1);
+        assertTrue(first.hasField(RowDelta.FIELD_EXAM1));
+        assertFalse(first.hasField(RowDelta.FIELD_EXAM2));
+        assertEquals(42.5, first.getValue(RowDelta.FIELD_EXAM1), 0.0);
+        assertEquals(3, first.getVersion());
+    }
+
+    @Test
+    public void push_sendsOnlyChangedRowsInCompressedBatches() throws IOException {
+        ChangeTracker tracker = trackerWithChanges(25);
+        SyncClient client = newClient(10);
+
+        long acknowledged = client.push(tracker);
+
+        assertEquals(tracker.getVersion(), acknowledged);
+        assertEquals(3, server.requestCount.get());
+        assertEquals(25, server.received.size());
+        assertTrue(client.getLastPushBytes() > 0);
+        assertEquals(0, client.push(tracker) - acknowledged);
+        assertEquals(3, server.requestCount.get());
+    }
+
+    @Test
+    public void push_resumesFromLastAcknowledgedBatchAfterFailure() throws IOException {
+        ChangeTracker tracker = trackerWithChanges(30);
+        SyncClient client = newClient(10);
+        server.failRequest = 2;
+
+        try {
+            client.push(tracker);
+            fail("Expected the second batch to fail");
+        } catch (IOException expected) {
+            // First batch stays acknowledged
+        }
+        assertEquals(10, server.received.size());
+
+        long acknowledged = client.push(tracker);
+
+        assertEquals(tracker.getVersion(), acknowledged);
+        assertEquals(30, server.received.size());
+        assertEquals(30, server.deltaCount.get());
+    }
+
+    @Test
+    public void push_resendsRowsEditedAfterSync() throws IOException {
+        ChangeTracker tracker = trackerWithChanges(5);
+        SyncClient client = newClient(10);
+        client.push(tracker);
+
+        tracker.recordChange(3, "1RV21CS003", RowDelta.FIELD_EXAM2, 12.0);
+        client.push(tracker);
+
+        assertEquals(6, server.deltaCount.get());
+        RowDelta latest = server.received.get("1RV21CS003");
+        assertEquals(12.0, latest.getValue(RowDelta.FIELD_EXAM2), 0.0);
+        assertTrue(latest.hasField(RowDelta.FIELD_EXAM1));
+    }
+
+    @Test
+    public void push_ignoresStateFromAnotherSession() throws IOException {
+        File stateFile = temporaryFolder.newFile("sync-state");
+        SyncClient.FileSyncStateStore state = new SyncClient.FileSyncStateStore(stateFile);
+        state.save("previous-session", 1000);
+
+        SyncClient client = new SyncClient(server.url(), new SyncClient.FileSyncStateStore(stateFile));
+        client.setRetryPolicy(1, 0);
+        client.push(trackerWithChanges(4));
+
+        assertEquals(4, server.received.size());
+    }
+
+    @Test
+    public void push_resumesWithTrackerRestoredFromDisk() throws IOException {
+        ChangeTracker tracker = trackerWithChanges(30);
+        File stateFile = new File(temporaryFolder.getRoot(), "sync-state");
+        server.failRequest = 2;
+        try {
+            newClient(10, stateFile).push(tracker);
+            fail("Expected the second batch to fail");
+        } catch (IOException expected) {
+            // First batch stays acknowledged
+        }
+        ChangeTrackerStore store = new ChangeTrackerStore(new File(temporaryFolder.getRoot(), "changes/doc"));
+        store.save(tracker);
+
+        // A new process starts from a fresh tracker and reads the log back
+        ChangeTracker restored = new ChangeTracker();
+        assertTrue(store.restoreInto(restored));
+        assertEquals(tracker.getSessionId(), restored.getSessionId());
+        assertEquals(tracker.getVersion(), restored.getVersion());
+        assertEquals(30, restored.getChangedRowCount());
+
+        long acknowledged = newClient(10, stateFile).push(restored);
+
+        assertEquals(tracker.getVersion(), acknowledged);
+        assertEquals(30, server.received.size());
+        assertEquals(30, server.deltaCount.get());
+        assertEquals(30.0, server.received.get("1RV21CS030").getValue(RowDelta.FIELD_EXAM1), 0.0);
+    }
+
+    @Test
+    public void changeStore_restoresNothingWhenEmpty() throws IOException {
+        ChangeTrackerStore store = new ChangeTrackerStore(new File(temporaryFolder.getRoot(), "changes/doc"));
+        store.save(new ChangeTracker());
+
+        assertFalse(store.restoreInto(new ChangeTracker()));
+    }
+
+    private SyncClient newClient(int batchSize) throws IOException {
+        return newClient(batchSize, new File(temporaryFolder.getRoot(), "sync-" + System.nanoTime()));
+    }
+
+    private SyncClient newClient(int batchSize, File stateFile) throws IOException {
+        SyncClient client = new SyncClient(server.url(), new SyncClient.FileSyncStateStore(stateFile));
+        client.setBatchSize(batchSize);
+        client.setRetryPolicy(1, 0);
+        return client;
+    }
+
+    private static ChangeTracker trackerWithChanges(int rows) {
+        ChangeTracker tracker = new ChangeTracker();
+        for (int row = 1; row <= rows; row++) {
+            tracker.recordChange(row, String.format("1RV21CS%03d", row), RowDelta.FIELD_EXAM1, row);
+        }
+        return tracker;
+    }
+
+    /** Stand-in for the college system: applies deltas and acknowledges the highest version. */
+    private static class LocalSyncServer {
+        final Map<String, RowDelta> received = new LinkedHashMap<>();
+        final AtomicInteger requestCount = new AtomicInteger();
+        final AtomicInteger deltaCount = new AtomicInteger();
+        volatile int failRequest = -1;
+        private final HttpServer httpServer;
+
+        LocalSyncServer() throws IOException {
+            httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            httpServer.createContext("/deltas", exchange -> {
+                int request = requestCount.incrementAndGet();
+                byte[] response;
+                int status;
+                if (request == failRequest) {
+                    status = 500;
+                    response = new byte[0];
+                } else {
+                    List<RowDelta> deltas;
+                    try (InputStream in = new GZIPInputStream(exchange.getRequestBody())) {
+                        deltas = DeltaCodec.decode(in);
+                    }
+                    long highest = 0;
+                    synchronized (received) {
+                        for (RowDelta delta : deltas) {
+                            received.put(delta.getUsn(), delta);
+                            highest = Math.max(highest, delta.getVersion());
+                        }
+                    }
+                    deltaCount.addAndGet(deltas.size());
+                    status = 200;
+                    response = String.valueOf(highest).getBytes(StandardCharsets.UTF_8);
+                }
+                exchange.sendResponseHeaders(status, response.length == 0 ? -1 : response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            });
+            httpServer.start();
+        }
+
+        URL url() throws IOException {
+            return new URL("http://127.0.0.1:" + httpServer.getAddress().getPort() + "/deltas");
+        }
+
+        void stop() {
+            httpServer.stop(0);
+        }
+    }
+}
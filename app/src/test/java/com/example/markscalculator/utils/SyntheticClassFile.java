@@ -0,0 +1,226 @@
+package com.example.markscalculator.utils;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministic generator for class sheets in the layout the handlers expect:
+ * Name, USN, Exam1, Exam2, Exam3 (plus AAT and any extra columns for XLSX).
+ * The same seed and options always produce the same file.
+ */
+public class SyntheticClassFile {
+    private static final String[] FIRST_NAMES = {
+            "Aarav", "Diya", "Ishaan", "Ananya", "Rohan", "Kavya", "Arjun", "Meera",
+            "Vikram", "Sneha", "Karthik", "Pooja", "Rahul", "Nisha", "Aditya", "Lakshmi"
+    };
+    private static final String[] LAST_NAMES = {
+            "Rao", "Sharma", "Iyer", "Reddy", "Nair", "Patil", "Hegde", "Kulkarni",
+            "Shetty", "Menon", "Gowda", "Joshi"
+    };
+    private static final String[] BRANCHES = {"CS", "IS", "EC", "ME", "CV", "EE", "AI"};
+
+    private final int rows;
+    private final int extraColumns;
+    private final boolean styled;
+    private final double blankRate;
+    private final double dirtyRate;
+    private final boolean quotedNames;
+    private final long seed;
+
+    private SyntheticClassFile(Builder builder) {
+        rows = builder.rows;
+        extraColumns = builder.extraColumns;
+        styled = builder.styled;
+        blankRate = builder.blankRate;
+        dirtyRate = builder.dirtyRate;
+        quotedNames = builder.quotedNames;
+        seed = builder.seed;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /** The USN generated for a 1-based student row. */
+    public static String usnFor(int row) {
+        String branch = BRANCHES[(row / 1000) % BRANCHES.length];
+        int year = 20 + (row / (1000 * BRANCHES.length)) % 10;
+        int region = 1 + (row / (10000 * BRANCHES.length)) % 9;
+        return String.format(Locale.US, "%dRV%02d%s%03d", region, year, branch, row % 1000);
+    }
+
+    public void writeXlsx(File file) throws IOException {
+        Random random = new Random(seed);
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(200);
+             OutputStream out = new FileOutputStream(file)) {
+            Sheet sheet = workbook.createSheet("Marks");
+            CellStyle headerStyle = null;
+            CellStyle markStyle = null;
+            CellStyle shadedStyle = null;
+            if (styled) {
+                headerStyle = workbook.createCellStyle();
+                Font bold = workbook.createFont();
+                bold.setBold(true);
+                headerStyle.setFont(bold);
+                markStyle = workbook.createCellStyle();
+                markStyle.setDataFormat(workbook.createDataFormat().getFormat("0.00"));
+                shadedStyle = workbook.createCellStyle();
+                shadedStyle.cloneStyleFrom(markStyle);
+                shadedStyle.setFillForegroundColor(IndexedColors.LIGHT_YELLOW.getIndex());
+                shadedStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+            }
+
+            Row header = sheet.createRow(0);
+            String[] titles = {"Name", "USN", "Exam1", "Exam2", "Exam3", "AAT",
+                    "Total", "Average", "Final"};
+            for (int column = 0; column < titles.length + extraColumns; column++) {
+                Cell cell = header.createCell(column);
+                cell.setCellValue(column < titles.length ? titles[column] : "Extra" + (column - titles.length + 1));
+                if (headerStyle != null) {
+                    cell.setCellStyle(headerStyle);
+                }
+            }
+
+            for (int rowIndex = 1; rowIndex <= rows; rowIndex++) {
+                Row row = sheet.createRow(rowIndex);
+                row.createCell(0).setCellValue(nameFor(random));
+                row.createCell(1).setCellValue(usnFor(rowIndex));
+                CellStyle style = rowIndex % 2 == 0 ? shadedStyle : markStyle;
+                for (int column = 2; column <= 5; column++) {
+                    writeMark(row, column, random, style);
+                }
+                for (int extra = 0; extra < extraColumns; extra++) {
+                    row.createCell(9 + extra).setCellValue("note " + random.nextInt(1000));
+                }
+            }
+            workbook.write(out);
+        }
+    }
+
+    public void writeCsv(File file) throws IOException {
+        Random random = new Random(seed);
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write("Name,USN,Exam1,Exam2,Exam3\n");
+            for (int rowIndex = 1; rowIndex <= rows; rowIndex++) {
+                String name = nameFor(random);
+                writer.write(quotedNames || name.contains(",")
+                        ? '"' + name.replace("\"", "\"\"") + '"' : name);
+                writer.write(',');
+                writer.write(usnFor(rowIndex));
+                for (int exam = 0; exam < 3; exam++) {
+                    writer.write(',');
+                    writer.write(csvMark(random));
+                }
+                writer.write('\n');
+            }
+        }
+    }
+
+    private String nameFor(Random random) {
+        String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " "
+                + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        if (quotedNames && random.nextInt(4) == 0) {
+            // Exercise separators and quotes inside a quoted field
+            name = LAST_NAMES[random.nextInt(LAST_NAMES.length)] + ", " + name + " \"Jr\"";
+        }
+        return name;
+    }
+
+    private void writeMark(Row row, int column, Random random, CellStyle style) {
+        double roll = random.nextDouble();
+        if (roll < blankRate) {
+            return;
+        }
+        Cell cell = row.createCell(column);
+        double mark = mark(random);
+        if (roll < blankRate + dirtyRate) {
+            // Numbers typed as text, sometimes with stray spaces
+            cell.setCellValue(random.nextBoolean() ? " " + mark + " " : String.valueOf(mark));
+        } else {
+            cell.setCellValue(mark);
+        }
+        if (style != null) {
+            cell.setCellStyle(style);
+        }
+    }
+
+    private String csvMark(Random random) {
+        double roll = random.nextDouble();
+        if (roll < blankRate) {
+            return "";
+        }
+        String mark = String.valueOf(mark(random));
+        return roll < blankRate + dirtyRate ? "  " + mark + " " : mark;
+    }
+
+    private static double mark(Random random) {
+        return Math.round(random.nextDouble() * 50 * 2) / 2.0;
+    }
+
+    public static class Builder {
+        private int rows = 100;
+        private int extraColumns = 0;
+        private boolean styled = false;
+        private double blankRate = 0;
+        private double dirtyRate = 0;
+        private boolean quotedNames = false;
+        private long seed = 42;
+
+        public Builder setRows(int rows) {
+            this.rows = rows;
+            return this;
+        }
+
+        /** XLSX only; CSV files always have exactly the five expected columns. */
+        public Builder setExtraColumns(int extraColumns) {
+            this.extraColumns = extraColumns;
+            return this;
+        }
+
+        public Builder setStyled(boolean styled) {
+            this.styled = styled;
+            return this;
+        }
+
+        public Builder setBlankRate(double blankRate) {
+            this.blankRate = blankRate;
+            return this;
+        }
+
+        public Builder setDirtyRate(double dirtyRate) {
+            this.dirtyRate = dirtyRate;
+            return this;
+        }
+
+        public Builder setQuotedNames(boolean quotedNames) {
+            this.quotedNames = quotedNames;
+            return this;
+        }
+
+        public Builder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public SyntheticClassFile build() {
+            return new SyntheticClassFile(this);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.markscalculator.utils;
+
+import com.example.markscalculator.models.StudentData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class UsnCodecTest {
+
+    @Test
+    public void pack_roundTrips() {
+        String[] usns = {"1RV21CS001", "4SF19EC123", "0AA00AA000", "9ZZ99ZZ999"};
+        for (String usn : usns) {
+            long packed = UsnCodec.pack(usn);
+            assertNotEquals(usn, UsnCodec.NOT_PACKED, packed);
+            assertEquals(usn, UsnCodec.unpack(packed));
+        }
+    }
+
+    @Test
+    public void pack_sortsLikeTheStrings() {
+        Random random = new Random(42);
+        List<String> usns = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            usns.add(randomUsn(random));
+        }
+        // Neighbours where each field rolls over into the next
+        Collections.addAll(usns, "1RV21CS999", "1RV21CT000", "1RV99ZZ999", "1RW00AA000", "1ZZ99ZZ999", "2AA00AA000");
+
+        List<String> byString = new ArrayList<>(usns);
+        Collections.sort(byString);
+        List<String> byPacked = new ArrayList<>(usns);
+        byPacked.sort((a, b) -> Long.compare(UsnCodec.pack(a), UsnCodec.pack(b)));
+        assertEquals(byString, byPacked);
+    }
+
+    @Test
+    public void pack_rejectsNonConformingUsns() {
+        String[] rejected = {null, "", "1RV21CS00", "1RV21CS0011", "1rv21cs001", "1RV2XCS001",
+                "ARV21CS001", "1R121CS001", "1RV21CS0O1", "1RV21\u00C7S001"};
+        for (String usn : rejected) {
+            assertEquals(String.valueOf(usn), UsnCodec.NOT_PACKED, UsnCodec.pack(usn));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unpack_rejectsNotPacked() {
+        UsnCodec.unpack(UsnCodec.NOT_PACKED);
+    }
+
+    @Test
+    public void studentData_keepsRawUsnWhenNotPackable() {
+        StudentData lower = new StudentData("A", "1rv21cs001");
+        StudentData packed = new StudentData("B", "1RV21CS001");
+        StudentData samePacked = new StudentData("C", "1RV21CS001");
+        StudentData blank = new StudentData("D", "");
+
+        assertEquals(UsnCodec.NOT_PACKED, lower.getPackedUsn());
+        assertEquals("1rv21cs001", lower.getUsn());
+        assertEquals("", blank.getUsn());
+        assertFalse(lower.hasSameUsn(packed));
+        assertTrue(packed.hasSameUsn(samePacked));
+        assertEquals(packed.usnHashCode(), samePacked.usnHashCode());
+        assertTrue(lower.hasSameUsn(new StudentData("E", "1rv21cs001")));
+        // Mixed comparisons fall back to string order
+        assertTrue(StudentData.USN_ORDER.compare(packed, lower) < 0);
+        assertTrue(StudentData.USN_ORDER.compare(blank, packed) < 0);
+    }
+
+    private static String randomUsn(Random random) {
+        return "" + random.nextInt(10)
+                + (char) ('A' + random.nextInt(26)) + (char) ('A' + random.nextInt(26))
+                + String.format("%02d", random.nextInt(100))
+                + (char) ('A' + random.nextInt(26)) + (char) ('A' + random.nextInt(26))
+                + String.format("%03d", random.nextInt(1000));
+    }
+}
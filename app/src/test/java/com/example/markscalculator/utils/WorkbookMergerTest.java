@@ -0,0 +1,141 @@
+package com.example.markscalculator.utils;
+
+import com.example.markscalculator.models.StudentData;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class WorkbookMergerTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @After
+    public void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void latest_takesNewestSourcePerCell() throws IOException {
+        Map<String, StudentData> merged = merge(WorkbookMerger.ConflictPolicy.LATEST);
+
+        StudentData first = merged.get("1RV21CS001");
+        assertEquals(0.0, first.getExam1(), 0.0);
+        assertEquals(25.0, first.getExam2(), 0.0);
+        assertEquals(8.0, first.getAat(), 0.0);
+        assertEquals(MarksScheme.finalMarks(0, 25, 40, 8), first.getFinalMarks(), 1e-9);
+    }
+
+    @Test
+    public void nonZero_keepsEnteredMarksOverZeros() throws IOException {
+        Map<String, StudentData> merged = merge(WorkbookMerger.ConflictPolicy.NON_ZERO);
+
+        StudentData first = merged.get("1RV21CS001");
+        assertEquals(30.0, first.getExam1(), 0.0);
+        assertEquals(25.0, first.getExam2(), 0.0);
+    }
+
+    @Test
+    public void max_takesHighestValue() throws IOException {
+        Map<String, StudentData> merged = merge(WorkbookMerger.ConflictPolicy.MAX);
+
+        StudentData first = merged.get("1RV21CS001");
+        assertEquals(30.0, first.getExam1(), 0.0);
+        assertEquals(25.0, first.getExam2(), 0.0);
+        assertEquals(45.0, merged.get("1RV21CS002").getExam3(), 0.0);
+    }
+
+    @Test
+    public void merge_joinsStudentsFromAllSources() throws IOException {
+        Map<String, StudentData> merged = merge(WorkbookMerger.ConflictPolicy.LATEST);
+
+        assertEquals(4, merged.size());
+        assertEquals("Kavya, Rao", merged.get("1RV21CS003").getName());
+        assertEquals(12.0, merged.get("1RV21CS003").getExam1(), 0.0);
+        assertEquals(7.0, merged.get("LATERAL-07").getAat(), 0.0);
+    }
+
+    private Map<String, StudentData> merge(WorkbookMerger.ConflictPolicy policy) throws IOException {
+        File exam1Copy = writeXlsx("exam1.xlsx", new Object[][]{
+                {"Aarav Rao", "1RV21CS001", 30.0, null, 40.0, null},
+                {"Diya Iyer", "1RV21CS002", 20.0, null, 45.0, null},
+        });
+        File exam2Copy = writeXlsx("exam2.xlsx", new Object[][]{
+                {"Aarav Rao", "1RV21CS001", 0.0, 25.0, null, 8.0},
+                {"Diya Iyer", "1RV21CS002", null, 33.0, 41.0, null},
+                {"Lateral Entry", "LATERAL-07", null, null, null, 7.0},
+        });
+        File csvCopy = temporaryFolder.newFile("aat.csv");
+        Files.write(csvCopy.toPath(), ("Name,USN,Exam1,Exam2,Exam3\n" +
+                "\"Kavya, Rao\",1RV21CS003,12,,\n").getBytes(StandardCharsets.UTF_8));
+
+        List<WorkbookMerger.MergeSource> sources = Arrays.asList(
+                new WorkbookMerger.MergeSource("exam1", DocumentStreams.forFile(exam1Copy), false),
+                new WorkbookMerger.MergeSource("exam2", DocumentStreams.forFile(exam2Copy), false),
+                new WorkbookMerger.MergeSource("aat", DocumentStreams.forFile(csvCopy), true));
+        File output = temporaryFolder.newFile("merged-" + policy + ".xlsx");
+        new WorkbookMerger(executor, policy).merge(sources, DocumentStreams.forFile(output));
+
+        Map<String, StudentData> students = new HashMap<>();
+        ExcelHandler handler = new ExcelHandler(DocumentStreams.forFile(output));
+        try (XSSFWorkbook workbook = new XSSFWorkbook(output)) {
+            Sheet sheet = workbook.getSheetAt(0);
+            for (int row = 1; row <= handler.getStudentCount(); row++) {
+                StudentData student = handler.getStudentData(row);
+                student.setFinalMarks(sheet.getRow(row).getCell(8).getNumericCellValue());
+                students.put(student.getUsn(), student);
+            }
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            handler.close();
+        }
+        return students;
+    }
+
+    private File writeXlsx(String name, Object[][] rows) throws IOException {
+        File file = temporaryFolder.newFile(name);
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); OutputStream out = new FileOutputStream(file)) {
+            Sheet sheet = workbook.createSheet();
+            Row header = sheet.createRow(0);
+            String[] titles = {"Name", "USN", "Exam1", "Exam2", "Exam3", "AAT"};
+            for (int column = 0; column < titles.length; column++) {
+                header.createCell(column).setCellValue(titles[column]);
+            }
+            for (int i = 0; i < rows.length; i++) {
+                Row row = sheet.createRow(i + 1);
+                for (int column = 0; column < rows[i].length; column++) {
+                    Object value = rows[i][column];
+                    if (value instanceof String) {
+                        row.createCell(column).setCellValue((String) value);
+                    } else if (value instanceof Double) {
+                        row.createCell(column).setCellValue((Double) value);
+                    }
+                }
+            }
+            workbook.write(out);
+        }
+        return file;
+    }
+}